@@ -17,14 +17,24 @@
 
 package zone.dragon.dropwizard.async;
 
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.DispatcherType;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import io.dropwizard.Bundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import lombok.Getter;
+import lombok.NonNull;
 
 /**
  * Configures Dropwizard to support returning {@link ListenableFuture}, {@link CompletionStage}, and {@link CompletableFuture} from resource
@@ -33,11 +43,224 @@ import io.dropwizard.setup.Environment;
  * @author Bryan Harclerode
  */
 public class AsyncBundle implements Bundle {
+
+    /**
+     * Registry of suspended requests, exposed on the admin port through the {@code async-requests} and {@code cancel-async-requests}
+     * tasks
+     */
+    @Getter
+    private final AsyncRequestTracker requestTracker = new AsyncRequestTracker();
+
+    private int resumeThreads;
+
+    private LaneClassifier laneClassifier;
+
+    private long blockingThresholdNanos = -1;
+
+    private final Map<String, LongPollHub<?, ?>> longPollHubs = new LinkedHashMap<>();
+
+    private final Map<String, BatchLoader<?, ?>> batchLoaders = new LinkedHashMap<>();
+
+    private boolean lowFootprint;
+
+    private boolean cachedExceptionMappers;
+
+    private AsyncWarmup warmup;
+
+    private int batchMaxRequests;
+
+    private int batchMaxConcurrency;
+
+    private int scopeParallelism = AsyncScopeSettings.DEFAULT_MAX_PARALLELISM;
+
+    /**
+     * Resumes requests on a dedicated pool of threads that favors higher {@link AsyncLane lanes}, classifying requests by their
+     * {@link Lane} annotation
+     *
+     * @param resumeThreads
+     *     Number of threads used to resume requests
+     */
+    public AsyncBundle withPriorityLanes(int resumeThreads) {
+        return withPriorityLanes(resumeThreads, new DefaultLaneClassifier());
+    }
+
+    /**
+     * Resumes requests on a dedicated pool of threads that favors higher {@link AsyncLane lanes}
+     *
+     * @param resumeThreads
+     *     Number of threads used to resume requests
+     * @param laneClassifier
+     *     Assigns each request to a lane
+     */
+    public AsyncBundle withPriorityLanes(int resumeThreads, @NonNull LaneClassifier laneClassifier) {
+        this.resumeThreads = resumeThreads;
+        this.laneClassifier = laneClassifier;
+        return this;
+    }
+
+    /**
+     * Reports resource methods that spend longer than the threshold before returning their future, or whose requests are resumed on
+     * request threads; Offenders are listed by the {@code async-blocking} admin task.
+     *
+     * @param threshold
+     *     Longest time a resource method may spend before returning its future
+     * @param unit
+     *     Unit of {@code threshold}
+     */
+    public AsyncBundle withBlockingDetector(long threshold, @NonNull TimeUnit unit) {
+        this.blockingThresholdNanos = unit.toNanos(threshold);
+        return this;
+    }
+
+    /**
+     * Registers a hub for long-poll requests; It is injectable into resources with {@code @Inject @Named(name)}, reports its waiters under
+     * {@code LongPollHub.<name>} metrics, and resumes any remaining waiters on shutdown.
+     *
+     * @param name
+     *     Name the hub is injected by
+     * @param hub
+     *     Hub to register
+     */
+    public AsyncBundle withLongPollHub(@NonNull String name, @NonNull LongPollHub<?, ?> hub) {
+        if (longPollHubs.putIfAbsent(name, hub) != null) {
+            throw new IllegalArgumentException("A long-poll hub named " + name + " is already registered");
+        }
+        return this;
+    }
+
+    /**
+     * Registers a loader that batches lookups from concurrent requests; It is injectable into resources with {@code @Inject @Named(name)},
+     * reports its batch sizes, wait times and load times under {@code BatchLoader.<name>} metrics, and dispatches its last batch on
+     * shutdown.
+     *
+     * @param name
+     *     Name the loader is injected by
+     * @param loader
+     *     Loader to register
+     */
+    public AsyncBundle withBatchLoader(@NonNull String name, @NonNull BatchLoader<?, ?> loader) {
+        if (batchLoaders.putIfAbsent(name, loader) != null) {
+            throw new IllegalArgumentException("A batch loader named " + name + " is already registered");
+        }
+        return this;
+    }
+
+    /**
+     * Drops every reference a suspended request doesn't need in order to be resumed, including its entity, as soon as the resource method
+     * returns; See {@link AsyncFeature#withLowFootprint(boolean)}
+     */
+    public AsyncBundle withLowFootprint() {
+        this.lowFootprint = true;
+        return this;
+    }
+
+    /**
+     * Caches the exception mapper chosen for each exception class, for every request of the application; See
+     * {@link AsyncFeature#withCachedExceptionMappers(boolean)}
+     */
+    public AsyncBundle withCachedExceptionMappers() {
+        this.cachedExceptionMappers = true;
+        return this;
+    }
+
+    /**
+     * Warms up asynchronous resource methods before the server starts accepting traffic; The warm-up builds Jackson serializers with the
+     * environment's object mapper, unless it has been given one already.
+     */
+    public AsyncBundle withWarmup(@NonNull AsyncWarmup warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    /**
+     * Registers the {@link BatchResource batch endpoint} at {@code /batch}, which runs many sub-requests in one HTTP call
+     *
+     * @param maxRequests
+     *     Largest number of sub-requests accepted in a single call
+     * @param maxConcurrency
+     *     Largest number of sub-requests of a single call that run at once
+     */
+    public AsyncBundle withBatchEndpoint(int maxRequests, int maxConcurrency) {
+        if (maxRequests < 1 || maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxRequests and maxConcurrency must be at least 1");
+        }
+        this.batchMaxRequests = maxRequests;
+        this.batchMaxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Limits the number of child tasks each request's {@link AsyncScope} runs at once; Further forks are queued until one finishes
+     */
+    public AsyncBundle withScopeParallelism(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.scopeParallelism = maxParallelism;
+        return this;
+    }
+
     @Override
     public void initialize(Bootstrap<?> bootstrap) { }
 
     @Override
     public void run(Environment environment) {
-        environment.jersey().register(AsyncFeature.class);
+        AsyncFeature feature = new AsyncFeature(requestTracker)
+            .withLowFootprint(lowFootprint)
+            .withCachedExceptionMappers(cachedExceptionMappers)
+            .withObjectMapper(environment.getObjectMapper());
+        if (laneClassifier != null) {
+            PriorityResumeScheduler resumeScheduler = new PriorityResumeScheduler(resumeThreads, laneClassifier, environment.metrics());
+            environment.lifecycle().manage(resumeScheduler);
+            feature.withResumeScheduler(resumeScheduler);
+        }
+        if (blockingThresholdNanos >= 0) {
+            BlockingDetector blockingDetector = new BlockingDetector(blockingThresholdNanos, TimeUnit.NANOSECONDS, environment.metrics());
+            environment.lifecycle().manage(blockingDetector);
+            environment
+                .servlets()
+                .addFilter("async-blocking-detector", blockingDetector.requestThreadFilter())
+                .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/*");
+            environment.admin().addTask(new BlockingOffendersTask(blockingDetector));
+            feature.withBlockingDetector(blockingDetector);
+        }
+        for (Map.Entry<String, LongPollHub<?, ?>> entry : longPollHubs.entrySet()) {
+            LongPollHub<?, ?> hub = entry.getValue();
+            String prefix = MetricRegistry.name(LongPollHub.class, entry.getKey());
+            environment.lifecycle().manage(hub);
+            environment.metrics().register(MetricRegistry.name(prefix, "waiting"), (Gauge<Long>) hub::getWaiting);
+            environment.metrics().register(MetricRegistry.name(prefix, "published"), (Gauge<Long>) hub::getPublished);
+            environment.metrics().register(MetricRegistry.name(prefix, "timeouts"), (Gauge<Long>) hub::getTimeouts);
+            feature.withLongPollHub(entry.getKey(), hub);
+        }
+        for (Map.Entry<String, BatchLoader<?, ?>> entry : batchLoaders.entrySet()) {
+            BatchLoader<?, ?> loader = entry.getValue();
+            String prefix = MetricRegistry.name(BatchLoader.class, entry.getKey());
+            environment.lifecycle().manage(loader);
+            environment.metrics().register(MetricRegistry.name(prefix, "batchSize"), loader.getBatchSizes());
+            environment.metrics().register(MetricRegistry.name(prefix, "wait"), loader.getWaitTimes());
+            environment.metrics().register(MetricRegistry.name(prefix, "load"), loader.getLoadTimes());
+            feature.withBatchLoader(entry.getKey(), loader);
+        }
+        AsyncScopeSettings scopeSettings = new AsyncScopeSettings(scopeParallelism);
+        environment.metrics().register(MetricRegistry.name(AsyncScope.class, "forks"), scopeSettings.getForks());
+        environment.metrics().register(MetricRegistry.name(AsyncScope.class, "peakConcurrency"), scopeSettings.getPeakConcurrency());
+        environment.metrics().register(MetricRegistry.name(AsyncScope.class, "cancelled"), scopeSettings.getCancelled());
+        environment.metrics().register(MetricRegistry.name(AsyncScope.class, "timeouts"), scopeSettings.getTimeouts());
+        feature.withScopeSettings(scopeSettings);
+        if (warmup != null) {
+            if (warmup.getObjectMapper() == null) {
+                warmup.withObjectMapper(environment.getObjectMapper());
+            }
+            feature.withWarmup(warmup);
+        }
+        environment.jersey().register(feature);
+        if (batchMaxRequests > 0) {
+            BatchResource batchResource = new BatchResource(environment.getObjectMapper(), batchMaxRequests, batchMaxConcurrency);
+            environment.jersey().register(batchResource);
+            environment.jersey().register(batchResource.containerListener());
+        }
+        environment.admin().addTask(new AsyncRequestsTask(requestTracker));
+        environment.admin().addTask(new CancelAsyncRequestsTask(requestTracker));
     }
 }
@@ -17,14 +17,27 @@
 
 package zone.dragon.dropwizard.async;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
+import javax.inject.Singleton;
+import javax.ws.rs.Priorities;
 import javax.ws.rs.core.Feature;
 import javax.ws.rs.core.FeatureContext;
 
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
 import org.glassfish.jersey.server.spi.internal.ResourceMethodDispatcher;
+import org.glassfish.jersey.server.spi.internal.ValueFactoryProvider;
+import org.glassfish.jersey.spi.ExceptionMappers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.jackson.Jackson;
+import lombok.Getter;
+import lombok.NonNull;
 
 /**
  * Jersey {@link Feature} that enables support for resources that return {@link CompletionStage} or {@link CompletableFuture}
@@ -32,12 +45,162 @@ import org.glassfish.jersey.server.spi.internal.ResourceMethodDispatcher;
  * @author Bryan Harclerode
  */
 public class AsyncFeature implements Feature {
+
+    /**
+     * Configuration property that, when {@code true}, makes asynchronous resource methods drop the request entity as soon as they have been
+     * invoked; See {@link #withLowFootprint(boolean)}
+     */
+    public static final String LOW_FOOTPRINT = "zone.dragon.dropwizard.async.lowFootprint";
+
+    @Getter
+    private final AsyncRequestTracker requestTracker;
+
+    public AsyncFeature() {
+        this(new AsyncRequestTracker());
+    }
+
+    @Getter
+    private PriorityResumeScheduler resumeScheduler;
+
+    @Getter
+    private BlockingDetector blockingDetector;
+
+    private final Map<String, LongPollHub<?, ?>> longPollHubs = new LinkedHashMap<>();
+
+    private final Map<String, BatchLoader<?, ?>> batchLoaders = new LinkedHashMap<>();
+
+    @Getter
+    private boolean lowFootprint;
+
+    @Getter
+    private AsyncWarmup warmup;
+
+    @Getter
+    private boolean cachedExceptionMappers;
+
+    @Getter
+    private AsyncScopeSettings scopeSettings = new AsyncScopeSettings(AsyncScopeSettings.DEFAULT_MAX_PARALLELISM);
+
+    @Getter
+    private ObjectMapper objectMapper;
+
+    public AsyncFeature(@NonNull AsyncRequestTracker requestTracker) {
+        this.requestTracker = requestTracker;
+    }
+
+    /**
+     * Resumes requests on the given scheduler's lanes, rather than on the thread that completes their future
+     */
+    public AsyncFeature withResumeScheduler(PriorityResumeScheduler resumeScheduler) {
+        this.resumeScheduler = resumeScheduler;
+        return this;
+    }
+
+    /**
+     * Reports resource methods that block request threads to the given detector
+     */
+    public AsyncFeature withBlockingDetector(BlockingDetector blockingDetector) {
+        this.blockingDetector = blockingDetector;
+        return this;
+    }
+
+    /**
+     * Makes a hub injectable into resources with {@code @Inject @Named(name)}
+     */
+    public AsyncFeature withLongPollHub(@NonNull String name, @NonNull LongPollHub<?, ?> hub) {
+        longPollHubs.put(name, hub);
+        return this;
+    }
+
+    /**
+     * Makes a batch loader injectable into resources with {@code @Inject @Named(name)}
+     */
+    public AsyncFeature withBatchLoader(@NonNull String name, @NonNull BatchLoader<?, ?> loader) {
+        batchLoaders.put(name, loader);
+        return this;
+    }
+
+    /**
+     * Reduces the heap retained by each suspended request by dropping every reference that isn't needed to resume it as soon as the
+     * resource method returns, including the request entity; Resource methods must not read the entity from the request after they have
+     * returned.
+     */
+    public AsyncFeature withLowFootprint(boolean lowFootprint) {
+        this.lowFootprint = lowFootprint;
+        return this;
+    }
+
+    /**
+     * Replaces Jersey's exception mapper lookup with one that caches the mapper chosen for each exception class; See
+     * {@link CachingExceptionMappers}.
+     * <p>
+     * This applies to every request of the application, synchronous or not, since Jersey has a single {@code ExceptionMappers} service.
+     * It builds its own copy of Jersey's internal {@code ExceptionMapperFactory}, so it is tied to the Jersey version this library is built
+     * against.
+     */
+    public AsyncFeature withCachedExceptionMappers(boolean cachedExceptionMappers) {
+        this.cachedExceptionMappers = cachedExceptionMappers;
+        return this;
+    }
+
+    /**
+     * Warms up the dispatch path of asynchronous resource methods when the container starts
+     */
+    public AsyncFeature withWarmup(AsyncWarmup warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    /**
+     * Limits and reports the child tasks forked through each request's {@link AsyncScope}
+     */
+    public AsyncFeature withScopeSettings(@NonNull AsyncScopeSettings scopeSettings) {
+        this.scopeSettings = scopeSettings;
+        return this;
+    }
+
+    /**
+     * Serializes the elements of {@link java.util.stream.Stream Stream} and {@link java.util.Iterator Iterator} results with the given
+     * mapper; Defaults to {@link Jackson#newObjectMapper()}
+     */
+    public AsyncFeature withObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        return this;
+    }
+
     @Override
     public boolean configure(FeatureContext context) {
         context.register(AsyncModelProcessor.class);
+        context.register(ConditionalResponseFilter.class, Priorities.HEADER_DECORATOR);
+        if (warmup != null) {
+            context.register(warmup);
+        }
+        if (lowFootprint) {
+            context.property(LOW_FOOTPRINT, true);
+        }
         context.register(new AbstractBinder() {
             @Override
             protected void configure() {
+                bind(requestTracker).to(AsyncRequestTracker.class);
+                if (resumeScheduler != null) {
+                    bind(resumeScheduler).to(PriorityResumeScheduler.class);
+                }
+                if (blockingDetector != null) {
+                    bind(blockingDetector).to(BlockingDetector.class);
+                }
+                for (Map.Entry<String, LongPollHub<?, ?>> hub : longPollHubs.entrySet()) {
+                    bind(hub.getValue()).named(hub.getKey()).to(LongPollHub.class);
+                }
+                for (Map.Entry<String, BatchLoader<?, ?>> loader : batchLoaders.entrySet()) {
+                    bind(loader.getValue()).named(loader.getKey()).to(BatchLoader.class);
+                }
+                bind(scopeSettings).to(AsyncScopeSettings.class);
+                bind(new StreamingResults(objectMapper != null ? objectMapper : Jackson.newObjectMapper())).to(StreamingResults.class);
+                bindFactory(AsyncScopeFactory.class, Singleton.class).to(AsyncScope.class).in(RequestScoped.class);
+                if (cachedExceptionMappers) {
+                    bind(CachingExceptionMappers.class).to(ExceptionMappers.class).in(Singleton.class).ranked(100);
+                }
+                bind(AsyncParamValueFactoryProvider.class).to(ValueFactoryProvider.class).in(Singleton.class);
                 bind(AsyncJavaResourceMethodDispatcherProvider.class).to(ResourceMethodDispatcher.Provider.class).ranked(100);
             }
         });
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.List;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits Java Flight Recorder events for each stage of an asynchronous request, so that time spent suspended shows up in recordings:
+ * <ul>
+ * <li>{@code zone.dragon.dropwizard.async.Dispatch} spans the invocation of the resource method, until it returns; Filters, validators
+ * and {@link AsyncParam} lookups that run before it aren't included</li>
+ * <li>{@code zone.dragon.dropwizard.async.Suspended} spans from the resource method returning until its future completes, and is
+ * committed on the completing thread</li>
+ * <li>{@code zone.dragon.dropwizard.async.Resume} spans the resumption of the response, including a {@link AsyncValidator validator}'s
+ * {@code 304 Not Modified}</li>
+ * <li>{@code zone.dragon.dropwizard.async.Failure} is recorded when the future fails, or when the request fails before the resource method
+ * returns one (including the resource method throwing)</li>
+ * </ul>
+ * All events are disabled by default, and must be enabled in the recording settings (e.g. with JMC's template manager). While none of them
+ * are enabled, {@link #begin} returns {@code null} and nothing further is recorded for the request.
+ *
+ * @author Bryan Harclerode
+ */
+final class AsyncFlightRecorder {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private final DispatchEvent dispatch = new DispatchEvent();
+
+    private final SuspendedEvent suspended = new SuspendedEvent();
+
+    private final ResumeEvent resume = new ResumeEvent();
+
+    private final String resourceMethod;
+
+    private final String uriTemplate;
+
+    private boolean dispatching;
+
+    private AsyncFlightRecorder(String resourceMethod, String uriTemplate) {
+        this.resourceMethod = resourceMethod;
+        this.uriTemplate = uriTemplate;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts recording a request, if any of the events are enabled
+     *
+     * @param resourceMethod
+     *     Name of the resource method handling the request
+     * @param request
+     *     Request being dispatched
+     *
+     * @return The recording for this request, or {@code null} if nothing is being recorded
+     */
+    static AsyncFlightRecorder begin(String resourceMethod, ContainerRequest request) {
+        if (!AVAILABLE || !Events.anyEnabled()) {
+            return null;
+        }
+        return new AsyncFlightRecorder(resourceMethod, uriTemplate(request));
+    }
+
+    private static String uriTemplate(ContainerRequest request) {
+        // Matched templates are ordered from the most specific to the least specific
+        List<UriTemplate> templates = request.getUriInfo().getMatchedTemplates();
+        StringBuilder uriTemplate = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            uriTemplate.append(templates.get(i).getTemplate());
+        }
+        return uriTemplate.toString();
+    }
+
+    /**
+     * The resource method is about to be invoked
+     */
+    void invoking() {
+        dispatching = true;
+        dispatch.begin();
+    }
+
+    /**
+     * The resource method has returned, and the request is now suspended
+     */
+    void invoked() {
+        endDispatch();
+        suspended.begin();
+    }
+
+    /**
+     * The request failed before the resource method returned a future, so it was never suspended
+     */
+    void failed(Throwable error) {
+        endDispatch();
+        recordFailure(error);
+    }
+
+    private void endDispatch() {
+        if (!dispatching) {
+            // Failed before the resource method was invoked
+            return;
+        }
+        dispatching = false;
+        dispatch.end();
+        if (dispatch.shouldCommit()) {
+            dispatch.resourceMethod = resourceMethod;
+            dispatch.uriTemplate = uriTemplate;
+            dispatch.commit();
+        }
+    }
+
+    /**
+     * The future returned by the resource method has completed on the current thread
+     */
+    void completed(Throwable error) {
+        suspended.end();
+        if (suspended.shouldCommit()) {
+            suspended.resourceMethod = resourceMethod;
+            suspended.uriTemplate = uriTemplate;
+            suspended.completingThread = Thread.currentThread();
+            suspended.failed = error != null;
+            suspended.commit();
+        }
+        if (error != null) {
+            recordFailure(error);
+        }
+    }
+
+    private void recordFailure(Throwable error) {
+        FailureEvent failure = new FailureEvent();
+        if (failure.isEnabled()) {
+            failure.resourceMethod = resourceMethod;
+            failure.uriTemplate = uriTemplate;
+            failure.exceptionClass = error.getClass();
+            failure.message = error.getMessage();
+            failure.commit();
+        }
+    }
+
+    void resuming() {
+        resume.begin();
+    }
+
+    void resumed() {
+        resume.end();
+        if (resume.shouldCommit()) {
+            resume.resourceMethod = resourceMethod;
+            resume.uriTemplate = uriTemplate;
+            resume.commit();
+        }
+    }
+
+    /**
+     * Kept separate from {@link AsyncFlightRecorder} so the event classes are only loaded once JFR is known to be available
+     */
+    private static final class Events {
+
+        private static final EventType DISPATCH = EventType.getEventType(DispatchEvent.class);
+
+        private static final EventType SUSPENDED = EventType.getEventType(SuspendedEvent.class);
+
+        private static final EventType RESUME = EventType.getEventType(ResumeEvent.class);
+
+        private static final EventType FAILURE = EventType.getEventType(FailureEvent.class);
+
+        static boolean anyEnabled() {
+            return DISPATCH.isEnabled() || SUSPENDED.isEnabled() || RESUME.isEnabled() || FAILURE.isEnabled();
+        }
+    }
+
+    @Name("zone.dragon.dropwizard.async.Dispatch")
+    @Label("Async Dispatch")
+    @Description("Invocation of an asynchronous resource method, until it returns its future")
+    @Category({"Dropwizard", "Async"})
+    @Enabled(false)
+    @StackTrace(false)
+    static class DispatchEvent extends Event {
+
+        @Label("Resource Method")
+        String resourceMethod;
+
+        @Label("URI Template")
+        String uriTemplate;
+    }
+
+    @Name("zone.dragon.dropwizard.async.Suspended")
+    @Label("Async Suspended")
+    @Description("Time a request spent suspended, waiting for the future returned by its resource method")
+    @Category({"Dropwizard", "Async"})
+    @Enabled(false)
+    @StackTrace(false)
+    static class SuspendedEvent extends Event {
+
+        @Label("Resource Method")
+        String resourceMethod;
+
+        @Label("URI Template")
+        String uriTemplate;
+
+        @Label("Completing Thread")
+        Thread completingThread;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("zone.dragon.dropwizard.async.Resume")
+    @Label("Async Resume")
+    @Description("Resumption of a suspended request, once its future completed or a validator matched its preconditions")
+    @Category({"Dropwizard", "Async"})
+    @Enabled(false)
+    @StackTrace(false)
+    static class ResumeEvent extends Event {
+
+        @Label("Resource Method")
+        String resourceMethod;
+
+        @Label("URI Template")
+        String uriTemplate;
+    }
+
+    @Name("zone.dragon.dropwizard.async.Failure")
+    @Label("Async Failure")
+    @Description("Failure of the future returned by an asynchronous resource method")
+    @Category({"Dropwizard", "Async"})
+    @Enabled(false)
+    static class FailureEvent extends Event {
+
+        @Label("Resource Method")
+        String resourceMethod;
+
+        @Label("URI Template")
+        String uriTemplate;
+
+        @Label("Exception Class")
+        Class<?> exceptionClass;
+
+        @Label("Message")
+        String message;
+    }
+}
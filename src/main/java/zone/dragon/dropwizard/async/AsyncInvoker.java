@@ -17,22 +17,41 @@
 
 package zone.dragon.dropwizard.async;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
+import javax.inject.Inject;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.Response;
 
+import org.glassfish.hk2.api.Optional;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.jersey.internal.inject.Providers;
+import org.glassfish.jersey.internal.util.PropertiesHelper;
+import org.glassfish.jersey.model.internal.RankedComparator;
+import org.glassfish.jersey.process.internal.RequestScope;
 import org.glassfish.jersey.server.ContainerRequest;
 import org.glassfish.jersey.server.internal.inject.ConfiguredValidator;
+import org.glassfish.jersey.server.internal.process.MappableException;
 import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.model.Parameter;
 import org.glassfish.jersey.server.model.internal.AbstractMethodParamInvoker;
 import org.glassfish.jersey.server.spi.internal.ParamValueFactoryWithSource;
 
-import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.MoreExecutors;
 
 
@@ -42,8 +61,52 @@ import com.google.common.util.concurrent.MoreExecutors;
  */
 public class AsyncInvoker extends AbstractMethodParamInvoker {
 
+    /**
+     * Replaces the entity of requests once their resource method has been invoked in low-footprint mode; Empty, so it's safe to share
+     */
+    private static final InputStream RELEASED_ENTITY = new ByteArrayInputStream(new byte[0]);
+
     private final javax.inject.Provider<AsyncResponse> responseProvider;
 
+    private final String endpoint;
+
+    private final Invocable resourceMethod;
+
+    @Inject
+    private AsyncRequestTracker requestTracker;
+
+    @Inject
+    @Optional
+    private PriorityResumeScheduler resumeScheduler;
+
+    @Inject
+    @Optional
+    private BlockingDetector blockingDetector;
+
+    @Inject
+    private RequestScope requestScope;
+
+    @Inject
+    private StreamingResults streamingResults;
+
+    private List<AsyncRequestFilter> requestFilters = Collections.emptyList();
+
+    /**
+     * Positions of the {@link AsyncParam} parameters, and the providers that resolve them
+     */
+    private int[] asyncParameterIndexes = new int[0];
+
+    private AsyncValueProvider[] asyncValueProviders = new AsyncValueProvider[0];
+
+    private boolean lowFootprint;
+
+    private ConditionalValidator validator;
+
+    /**
+     * Whether the method's results are written incrementally by {@link #streamingResults}, because it produces a stream or iterator
+     */
+    private boolean streaming;
+
     public AsyncInvoker(
         Invocable resourceMethod,
         InvocationHandler handler,
@@ -53,55 +116,264 @@ public class AsyncInvoker extends AbstractMethodParamInvoker {
     ) {
         super(resourceMethod, handler, valueProviders, validator);
         this.responseProvider = responseProvider;
+        this.resourceMethod = resourceMethod;
+        this.endpoint = resourceMethod.getHandlingMethod().getDeclaringClass().getSimpleName() + "#" + resourceMethod
+            .getHandlingMethod()
+            .getName();
+    }
+
+    /**
+     * Looks up the {@link AsyncRequestFilter filters} to run before each invocation, and the {@link AsyncValueProvider providers} for each
+     * {@link AsyncParam} parameter; Called by HK2 when the dispatcher is injected
+     */
+    @Inject
+    void initialize(ServiceLocator serviceLocator, Configuration configuration) {
+        lowFootprint = PropertiesHelper.isProperty(configuration.getProperty(AsyncFeature.LOW_FOOTPRINT));
+        validator = ConditionalValidator.forMethod(resourceMethod);
+        Type resultType = AsyncModelProcessor.asyncResultType(resourceMethod);
+        streaming = resultType != null && StreamingResults.isStreamingType(resultType);
+        requestFilters = ImmutableList.copyOf(Providers.sortRankedProviders(
+            new RankedComparator<AsyncRequestFilter>(),
+            Providers.getAllRankedProviders(serviceLocator, AsyncRequestFilter.class)
+        ));
+        List<AsyncValueProvider> valueProviders = ImmutableList.copyOf(Providers.sortRankedProviders(
+            new RankedComparator<AsyncValueProvider>(),
+            Providers.getAllRankedProviders(serviceLocator, AsyncValueProvider.class)
+        ));
+        List<Parameter> parameters = resourceMethod.getParameters();
+        List<Integer> indexes = new ArrayList<>();
+        List<AsyncValueProvider> providers = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            Parameter parameter = parameters.get(i);
+            if (!parameter.isAnnotationPresent(AsyncParam.class)) {
+                continue;
+            }
+            AsyncValueProvider provider = null;
+            for (AsyncValueProvider candidate : valueProviders) {
+                if (candidate.canResolve(parameter)) {
+                    provider = candidate;
+                    break;
+                }
+            }
+            if (provider == null) {
+                throw new IllegalStateException(String.format(
+                    "No AsyncValueProvider can resolve parameter %d (%s) of %s",
+                    i,
+                    parameter.getRawType().getName(),
+                    resourceMethod.getHandlingMethod()
+                ));
+            }
+            indexes.add(i);
+            providers.add(provider);
+        }
+        asyncParameterIndexes = Ints.toArray(indexes);
+        asyncValueProviders = providers.toArray(new AsyncValueProvider[0]);
     }
 
     @Override
     protected Response doDispatch(Object resource, ContainerRequest request) throws ProcessingException {
-        continueAsyncDispatch(invoke(request, resource, getParamValues()), responseProvider.get());
+        long startNanos = System.nanoTime();
+        AsyncResponse callback = responseProvider.get();
+        InFlightRequest inFlight = requestTracker.track(request.getMethod(), request.getRequestUri(), endpoint, startNanos, callback);
+        // Stop tracking once the response has been written, regardless of whether it completed, failed, or was cancelled
+        callback.register(inFlight);
+        inFlight.setRecording(AsyncFlightRecorder.begin(endpoint, request));
+        if (request.getProperty(BatchResource.SUB_REQUEST) == null) {
+            // Sub-requests complete on whichever thread is running their batch by design
+            inFlight.setBlockingDetector(blockingDetector);
+        }
+        if (streaming) {
+            inFlight.setStreaming(streamingResults);
+        }
+        Executor executor = MoreExecutors.directExecutor();
+        if (resumeScheduler != null) {
+            executor = resumeScheduler.executorFor(resumeScheduler.classify(request, resourceMethod));
+        }
+        if (requestFilters.isEmpty()) {
+            validateAndContinue(resource, request, callback, inFlight, executor);
+        } else {
+            filterAndContinue(resource, request, callback, inFlight, executor);
+        }
         return null;
     }
 
+    /**
+     * Runs the request filters, and then invokes the resource method on whichever thread completes the last filter. The request scope is
+     * carried over so that parameters can still be resolved once the Jetty thread has moved on.
+     */
+    private void filterAndContinue(
+        Object resource, ContainerRequest request, AsyncResponse callback, InFlightRequest inFlight, Executor executor
+    ) {
+        CompletionStage<Void> filtered = CompletableFuture.completedFuture(null);
+        for (AsyncRequestFilter filter : requestFilters) {
+            filtered = filtered.thenCompose(ignored -> filter.filter(request));
+        }
+        RequestScope.Instance scope = requestScope.referenceCurrent();
+        filtered.whenComplete((ignored, error) -> continueInScope(
+            scope,
+            error,
+            inFlight,
+            () -> validateAndContinue(resource, request, callback, inFlight, executor)
+        ));
+    }
 
-    protected void continueAsyncDispatch(Object continuation, AsyncResponse callback) {
-        if (continuation instanceof CompletionStage){
-            ((CompletionStage<?>)continuation).whenComplete((
-                response, error) -> {
+    /**
+     * Resolves the method's parameters, computes its {@link AsyncValidator validator} from them if it has one, and resumes with
+     * {@code 304 Not Modified} if it matches the request's preconditions; Otherwise invokes the resource method with the same parameters.
+     */
+    private void validateAndContinue(
+        Object resource, ContainerRequest request, AsyncResponse callback, InFlightRequest inFlight, Executor executor
+    ) {
+        Object[] args = getParamValues();
+        if (validator == null || !validator.appliesTo(request)) {
+            lookupAndContinue(resource, request, callback, args, inFlight, executor);
+            return;
+        }
+        CompletionStage<?> validation;
+        try {
+            validation = validator.validate(resource, args);
+        } catch (Throwable error) {
+            inFlight.onFailure(error);
+            return;
+        }
+        RequestScope.Instance scope = requestScope.referenceCurrent();
+        validation.whenComplete((value, error) -> continueInScope(scope, error, inFlight, () -> {
+            Response.ResponseBuilder preconditionResponse = validator.evaluate(request, value);
+            if (preconditionResponse != null) {
+                inFlight.resumeEarly(preconditionResponse.build());
+            } else {
+                lookupAndContinue(resource, request, callback, args, inFlight, executor);
+            }
+        }));
+    }
+
+    /**
+     * Invokes the method once every parameter resolved by an {@link AsyncValueProvider} is available; Their lookups are all started at
+     * once and the method is invoked when the last one completes.
+     */
+    private void lookupAndContinue(
+        Object resource, ContainerRequest request, AsyncResponse callback, Object[] args, InFlightRequest inFlight, Executor executor
+    ) {
+        if (asyncParameterIndexes.length == 0) {
+            invokeAndContinue(resource, request, callback, args, inFlight, executor);
+            return;
+        }
+        List<Parameter> parameters = resourceMethod.getParameters();
+        CompletableFuture<?>[] lookups = new CompletableFuture<?>[asyncParameterIndexes.length];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = lookup(asyncValueProviders[i], request, parameters.get(asyncParameterIndexes[i]));
+        }
+        RequestScope.Instance scope = requestScope.referenceCurrent();
+        CompletableFuture.allOf(lookups).whenComplete((ignored, error) -> {
+            if (error == null) {
+                for (int i = 0; i < lookups.length; i++) {
+                    args[asyncParameterIndexes[i]] = lookups[i].join();
+                }
+            }
+            continueInScope(scope, error, inFlight, () -> invokeAndContinue(resource, request, callback, args, inFlight, executor));
+        });
+    }
+
+    private static CompletableFuture<?> lookup(AsyncValueProvider provider, ContainerRequest request, Parameter parameter) {
+        CompletableFuture<Object> value = new CompletableFuture<>();
+        try {
+            provider.resolve(request, parameter).whenComplete((result, error) -> {
                 if (error != null) {
-                    callback.resume(error);
+                    value.completeExceptionally(error);
                 } else {
-                    callback.resume(response);
+                    value.complete(result);
                 }
             });
-        } else if (continuation instanceof ListenableFuture){
-            ((ListenableFuture<?>)continuation).addListener(() -> {
-                if (((ListenableFuture<?>) continuation).isDone()) {
-                    try {
-                        callback.resume(((ListenableFuture<?>) continuation).get());
-                    } catch (ExecutionException error){
-                        callback.resume(error.getCause());
-                    } catch(Throwable error){
-                        callback.resume(error);
-                    }
-                } else if (((ListenableFuture<?>) continuation).isCancelled()) {
-                    callback.cancel();
-                }
-            }, MoreExecutors.directExecutor());
-        } else if (continuation instanceof jersey.repackaged.com.google.common.util.concurrent.ListenableFuture) {
-            ((jersey.repackaged.com.google.common.util.concurrent.ListenableFuture<?>) continuation).addListener(() -> {
-            if (((jersey.repackaged.com.google.common.util.concurrent.ListenableFuture<?>) continuation).isDone()) {
+        } catch (Throwable error) {
+            value.completeExceptionally(error);
+        }
+        return value;
+    }
+
+    private void invokeAndContinue(
+        Object resource, ContainerRequest request, AsyncResponse callback, Object[] args, InFlightRequest inFlight, Executor executor
+    ) {
+        Object asyncScope = request.getProperty(AsyncScope.PROPERTY);
+        if (asyncScope instanceof AsyncScope && resumeScheduler != null) {
+            // Tasks released by a timeout start on the request's lane rather than the common pool
+            ((AsyncScope) asyncScope).setExecutor(executor);
+        }
+        inFlight.invoking();
+        Object continuation;
+        try {
+            if (blockingDetector == null) {
+                continuation = invoke(request, resource, args);
+            } else {
+                blockingDetector.enter(endpoint);
                 try {
-                    callback.resume(((jersey.repackaged.com.google.common.util.concurrent.ListenableFuture<?>) continuation).get());
-                } catch (ExecutionException error) {
-                    callback.resume(error.getCause());
-                } catch (Throwable error) {
-                    callback.resume(error);
+                    continuation = invoke(request, resource, args);
+                } finally {
+                    blockingDetector.exit(endpoint);
                 }
-            } else if (((jersey.repackaged.com.google.common.util.concurrent.ListenableFuture<?>) continuation).isCancelled()) {
-                callback.cancel();
             }
-        },MoreExecutors.directExecutor());
-        } else{
-            callback.resume(continuation);
+        } catch (Throwable error) {
+            // Jersey wraps exceptions thrown by the resource method so that they're mapped rather than treated as processing errors
+            inFlight.invokeFailed(error instanceof MappableException && error.getCause() != null ? error.getCause() : error);
+            throw error;
+        }
+        if (lowFootprint) {
+            // The parameters have already been read, so the only thing still referencing a buffered entity is the request
+            request.setEntityStream(RELEASED_ENTITY);
+        }
+        // The method may have created the scope itself, through a provider
+        asyncScope = request.getProperty(AsyncScope.PROPERTY);
+        if (asyncScope instanceof AsyncScope) {
+            // Cancels the child tasks as soon as the response is written, rather than when the request scope is finally released
+            callback.register(asyncScope);
+        }
+        inFlight.resumeOnCompletion(continuation, executor);
+    }
+
+    /**
+     * Fails the request if a prior asynchronous step failed, and otherwise runs the next step inside the request's scope
+     *
+     * @param scope
+     *     Reference to the request's scope, which is released once the next step has run
+     * @param error
+     *     Failure of the prior step, if any
+     * @param inFlight
+     *     Suspended request, failed with any failure
+     * @param next
+     *     Next step of the dispatch
+     */
+    private void continueInScope(RequestScope.Instance scope, Throwable error, InFlightRequest inFlight, Runnable next) {
+        try {
+            if (error != null) {
+                inFlight.onFailure(error);
+            } else {
+                requestScope.runInScope(scope, () -> {
+                    try {
+                        next.run();
+                    } catch (Throwable nextError) {
+                        inFlight.onFailure(nextError);
+                    }
+                });
+            }
+        } finally {
+            scope.release();
+        }
+    }
+
+    /**
+     * Strips the {@link CompletionException}s that {@link CompletionStage}s wrap around failures of dependent stages, and the
+     * {@link ExecutionException}s thrown by {@link java.util.concurrent.Future#get()}, so that the failure is mapped by its own type
+     */
+    static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
         }
+        return error;
+    }
+
+    /**
+     * Resumes {@code callback} on the completing thread once {@code continuation} completes
+     */
+    protected void continueAsyncDispatch(Object continuation, AsyncResponse callback) {
+        new InFlightRequest(callback).resumeOnCompletion(continuation, MoreExecutors.directExecutor());
     }
 }
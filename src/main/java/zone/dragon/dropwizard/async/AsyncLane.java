@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import lombok.Getter;
+
+/**
+ * Priority lanes used to schedule the resumption of asynchronous requests. When the {@link PriorityResumeScheduler} is saturated, each
+ * lane is served in proportion to its weight, so higher lanes are favored while lower lanes are still guaranteed a share and never
+ * starve.
+ *
+ * @author Bryan Harclerode
+ */
+public enum AsyncLane {
+    /**
+     * Health checks and other requests that must stay responsive under any load
+     */
+    CRITICAL(8),
+    /**
+     * Latency-sensitive traffic, such as premium-tier requests
+     */
+    HIGH(4),
+    /**
+     * Default lane for requests that have not been classified
+     */
+    NORMAL(2),
+    /**
+     * Batch and other throughput-oriented traffic
+     */
+    BULK(1);
+
+    /**
+     * Number of tasks taken from this lane in each scheduling round
+     */
+    @Getter
+    private final int weight;
+
+    AsyncLane(int weight) {
+        this.weight = weight;
+    }
+}
@@ -26,6 +26,7 @@ import javax.inject.Singleton;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.glassfish.jersey.server.model.Invocable;
 import org.glassfish.jersey.server.model.ModelProcessor;
@@ -66,7 +67,13 @@ public class AsyncModelProcessor implements ModelProcessor {
     }
 
     protected Type isAsyncMethod(ResourceMethod method) {
-        Invocable invocable = method.getInvocable();
+        return asyncResultType(method.getInvocable());
+    }
+
+    /**
+     * @return The type of the value the method's future completes with, or {@code null} if the method isn't asynchronous
+     */
+    static Type asyncResultType(Invocable invocable) {
         if (invocable == null || invocable.getResponseType() == null) {
             return null;
         }
@@ -105,6 +112,10 @@ public class AsyncModelProcessor implements ModelProcessor {
                     originalMethod.getInvocable().getRawRoutingResponseType(),
                     asyncResponseType
                 );
+                if (StreamingResults.isStreamingType(asyncResponseType)) {
+                    // Streams and iterators are resumed as a StreamingOutput that writes their elements as they are produced
+                    asyncResponseType = StreamingOutput.class;
+                }
                 resourceBuilder
                     .updateMethod(originalMethod)
                     .suspended(AsyncResponse.NO_TIMEOUT, TimeUnit.MILLISECONDS)
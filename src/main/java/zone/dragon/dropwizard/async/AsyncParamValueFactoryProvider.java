@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.Factory;
+import org.glassfish.jersey.server.model.Parameter;
+import org.glassfish.jersey.server.spi.internal.ValueFactoryProvider;
+
+/**
+ * Claims {@link AsyncParam} parameters so that Jersey's model validation accepts them. The placeholder it supplies is always {@code null};
+ * {@link AsyncInvoker} replaces it with the value resolved by an {@link AsyncValueProvider} before invoking the resource method.
+ *
+ * @author Bryan Harclerode
+ */
+@Singleton
+public class AsyncParamValueFactoryProvider implements ValueFactoryProvider {
+
+    private static final Factory<Object> PLACEHOLDER = new Factory<Object>() {
+        @Override
+        public Object provide() {
+            return null;
+        }
+
+        @Override
+        public void dispose(Object instance) { }
+    };
+
+    @Override
+    public Factory<?> getValueFactory(Parameter parameter) {
+        if (parameter.isAnnotationPresent(AsyncParam.class)) {
+            return PLACEHOLDER;
+        }
+        return null;
+    }
+
+    @Override
+    public PriorityType getPriority() {
+        return Priority.HIGH;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.ConstrainedTo;
+import javax.ws.rs.RuntimeType;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.spi.Contract;
+
+/**
+ * Non-blocking alternative to {@link ContainerRequestFilter} for requests handled by asynchronous resource methods. Filters are run after
+ * the request has been suspended and before any parameters are resolved, so they can make remote calls (authentication, tenant lookup,
+ * quotas, ...) without holding a request thread.
+ * <p>
+ * Filters are registered like any other provider, e.g. {@code environment.jersey().register(new MyFilter())}, and are run one after another
+ * in {@code @Priority} order. The resource method is only invoked once every filter's stage has completed successfully.
+ *
+ * @author Bryan Harclerode
+ */
+@Contract
+@ConstrainedTo(RuntimeType.SERVER)
+public interface AsyncRequestFilter {
+
+    /**
+     * Filters a request before it is dispatched to the resource method
+     *
+     * @param requestContext
+     *     Request being filtered
+     *
+     * @return Stage that completes once the request may proceed; Completing it exceptionally fails the request, and the exception is
+     * handled by the registered exception mappers.
+     */
+    CompletionStage<Void> filter(ContainerRequestContext requestContext);
+
+    /**
+     * Creates a stage that aborts the request with the given response
+     */
+    static CompletionStage<Void> abortWith(Response response) {
+        CompletableFuture<Void> aborted = new CompletableFuture<>();
+        aborted.completeExceptionally(new WebApplicationException(response));
+        return aborted;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.container.AsyncResponse;
+
+/**
+ * Keeps track of requests that are currently suspended waiting on an asynchronous resource method. Suspended requests have no thread,
+ * so they never show up in thread dumps; this registry is what lets them be inspected and cancelled from the admin port.
+ * <p>
+ * Requests are kept in a {@link ConcurrentSkipListMap} keyed by a monotonically increasing sequence, so registration and removal are
+ * lock-free and iteration always visits the oldest requests first.
+ *
+ * @author Bryan Harclerode
+ */
+public class AsyncRequestTracker {
+
+    /**
+     * Upper bounds (in milliseconds) of the buckets used by {@link #getAgeHistograms()}; Requests older than the last bound are counted in
+     * an extra overflow bucket
+     */
+    static final long[] AGE_BUCKETS = {
+        TimeUnit.SECONDS.toMillis(1),
+        TimeUnit.SECONDS.toMillis(10),
+        TimeUnit.MINUTES.toMillis(1),
+        TimeUnit.MINUTES.toMillis(5),
+        TimeUnit.HOURS.toMillis(1)
+    };
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentNavigableMap<Long, InFlightRequest> requests = new ConcurrentSkipListMap<>();
+
+    /**
+     * Starts tracking a suspended request
+     *
+     * @param method
+     *     HTTP method of the request
+     * @param uri
+     *     URI of the request
+     * @param endpoint
+     *     Name of the resource method handling the request
+     * @param startNanos
+     *     {@link System#nanoTime()} at which the request was dispatched
+     * @param response
+     *     Handle used to resume or cancel the request
+     *
+     * @return The tracked request, which must be {@link InFlightRequest#close() closed} once the request completes
+     */
+    public InFlightRequest track(String method, URI uri, String endpoint, long startNanos, AsyncResponse response) {
+        long id = sequence.incrementAndGet();
+        InFlightRequest request = new InFlightRequest(this, id, method, uri, endpoint, startNanos, response);
+        requests.put(id, request);
+        return request;
+    }
+
+    void remove(InFlightRequest request) {
+        requests.remove(request.getId(), request);
+    }
+
+    /**
+     * @return The number of requests currently suspended
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * @return A weakly-consistent view of all suspended requests, ordered from oldest to newest
+     */
+    public Collection<InFlightRequest> getRequests() {
+        return requests.values();
+    }
+
+    /**
+     * @return The number of suspended requests for each endpoint
+     */
+    public Map<String, Integer> getEndpointCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (InFlightRequest request : requests.values()) {
+            counts.merge(request.getEndpoint(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @return For each endpoint, the number of suspended requests falling into each of the {@link #AGE_BUCKETS}
+     */
+    public Map<String, int[]> getAgeHistograms() {
+        Map<String, int[]> histograms = new TreeMap<>();
+        long now = System.nanoTime();
+        for (InFlightRequest request : requests.values()) {
+            int[] histogram = histograms.computeIfAbsent(request.getEndpoint(), endpoint -> new int[AGE_BUCKETS.length + 1]);
+            histogram[bucketOf(TimeUnit.NANOSECONDS.toMillis(now - request.getStartNanos()))]++;
+        }
+        return histograms;
+    }
+
+    /**
+     * Cancels every request that has been suspended for longer than the given age
+     *
+     * @param age
+     *     Minimum age of the requests to cancel
+     * @param unit
+     *     Unit of {@code age}
+     *
+     * @return The number of requests that were cancelled
+     */
+    public int cancelOlderThan(long age, TimeUnit unit) {
+        long cutoff = System.nanoTime() - unit.toNanos(age);
+        int cancelled = 0;
+        for (InFlightRequest request : requests.values()) {
+            // Requests are ordered by dispatch sequence, which only approximates start time, so keep scanning rather than stopping early
+            if (request.getStartNanos() - cutoff <= 0 && request.cancel()) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    static int bucketOf(long ageMillis) {
+        for (int i = 0; i < AGE_BUCKETS.length; i++) {
+            if (ageMillis < AGE_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return AGE_BUCKETS.length;
+    }
+
+    static String bucketLabel(int bucket) {
+        if (bucket < AGE_BUCKETS.length) {
+            return "<" + formatMillis(AGE_BUCKETS[bucket]);
+        }
+        return ">=" + formatMillis(AGE_BUCKETS[AGE_BUCKETS.length - 1]);
+    }
+
+    private static String formatMillis(long millis) {
+        if (millis >= TimeUnit.HOURS.toMillis(1)) {
+            return TimeUnit.MILLISECONDS.toHours(millis) + "h";
+        } else if (millis >= TimeUnit.MINUTES.toMillis(1)) {
+            return TimeUnit.MILLISECONDS.toMinutes(millis) + "m";
+        }
+        return TimeUnit.MILLISECONDS.toSeconds(millis) + "s";
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.primitives.Ints;
+
+import io.dropwizard.servlets.tasks.Task;
+import lombok.NonNull;
+
+/**
+ * Admin task that prints a snapshot of the requests currently suspended on asynchronous resource methods, along with per-endpoint
+ * counts and age histograms.
+ * <p>
+ * Accepts an optional {@code limit} parameter controlling how many individual requests are listed (oldest first); Defaults to
+ * {@value #DEFAULT_LIMIT}.
+ *
+ * @author Bryan Harclerode
+ */
+public class AsyncRequestsTask extends Task {
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final AsyncRequestTracker tracker;
+
+    public AsyncRequestsTask(@NonNull AsyncRequestTracker tracker) {
+        super("async-requests");
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        int limit = DEFAULT_LIMIT;
+        if (parameters.containsKey("limit")) {
+            String value = parameters.get("limit").iterator().next();
+            Integer parsed = Ints.tryParse(value);
+            if (parsed == null || parsed < 0) {
+                output.printf("Invalid parameter: limit must be a non-negative number of requests, not '%s'%n", value);
+                return;
+            }
+            limit = parsed;
+        }
+        output.printf("In-flight async requests: %d%n", tracker.size());
+        output.println();
+        output.println("Per endpoint:");
+        Map<String, int[]> histograms = tracker.getAgeHistograms();
+        for (Map.Entry<String, Integer> count : tracker.getEndpointCounts().entrySet()) {
+            output.printf("  %s: %d", count.getKey(), count.getValue());
+            int[] histogram = histograms.get(count.getKey());
+            if (histogram != null) {
+                for (int i = 0; i < histogram.length; i++) {
+                    output.printf(" %s=%d", AsyncRequestTracker.bucketLabel(i), histogram[i]);
+                }
+            }
+            output.println();
+        }
+        output.println();
+        output.println("Oldest requests:");
+        int listed = 0;
+        int skipped = 0;
+        for (InFlightRequest request : tracker.getRequests()) {
+            if (listed >= limit) {
+                // Counted rather than taken from the tracker's size, which may have changed since the requests were listed
+                skipped++;
+                continue;
+            }
+            listed++;
+            output.printf(
+                "  #%d %s %s (%s) age=%dms state=%s%n",
+                request.getId(),
+                request.getMethod(),
+                request.getUri(),
+                request.getEndpoint(),
+                request.getAge(TimeUnit.MILLISECONDS),
+                request.getState()
+            );
+        }
+        if (skipped > 0) {
+            output.printf("  ... %d more%n", skipped);
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+
+import lombok.NonNull;
+
+/**
+ * Structured concurrency for a single request. Child tasks are {@link #fork(Supplier) forked} through the scope, which runs at most a
+ * fixed number of them at once and queues the rest; When the request completes, fails, times out or is cancelled, every child task that
+ * hasn't finished yet is cancelled at once.
+ * <p>
+ * Inject it into asynchronous resource methods with {@code @Context AsyncScope scope}. Per-request fan-out, peak concurrency,
+ * cancellations and timeouts are reported to the {@link AsyncScopeSettings} the scope was created with.
+ * <p>
+ * Queued tasks start on the thread that finished the task before them, or on the request's resume executor if that task timed out, so
+ * they never run on the scope's shared timer thread. The scope is also closed if Jersey reports that the client disconnected; Jersey only
+ * notices that when writing the response fails, so the tasks of an idle request whose client went away keep running until the request
+ * completes or times out.
+ *
+ * @author Bryan Harclerode
+ */
+public class AsyncScope implements CompletionCallback, ConnectionCallback, AutoCloseable {
+
+    /**
+     * Request property holding the scope created for the request
+     */
+    static final String PROPERTY = AsyncScope.class.getName();
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "async-scope-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Failure of a forked task that timed out; Its stack trace would only ever show the timer thread, so it isn't captured
+     * <p>
+     * A fresh instance is created for each timeout, rather than sharing one stackless instance created with suppression disabled, because
+     * {@link TimeoutException} doesn't expose the {@code Throwable} constructor that disables suppression; A shared instance would collect
+     * every suppressed exception added to it by any request.
+     */
+    private static final class BranchTimeoutException extends TimeoutException {
+
+        BranchTimeoutException(long timeoutNanos) {
+            super("Forked task timed out after " + timeoutNanos + "ns");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * A forked task, and the future completed with its outcome; Cancelling it also cancels the task's stage
+     */
+    private final class Branch<T> extends CompletableFuture<T> implements BiConsumer<T, Throwable>, Runnable {
+
+        private final Supplier<? extends CompletionStage<T>> task;
+
+        private final long timeoutNanos;
+
+        private volatile CompletionStage<T> stage;
+
+        private volatile ScheduledFuture<?> timeout;
+
+        Branch(Supplier<? extends CompletionStage<T>> task, long timeoutNanos) {
+            this.task = task;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        void start() {
+            if (isDone()) {
+                // Cancelled while it was queued
+                finished(this);
+                return;
+            }
+            if (timeoutNanos > 0) {
+                timeout = TIMER.schedule(this, timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            try {
+                stage = task.get();
+            } catch (Throwable error) {
+                accept(null, error);
+                return;
+            }
+            stage.whenComplete(this);
+        }
+
+        /**
+         * Completion of the task's stage
+         */
+        @Override
+        public void accept(T value, Throwable error) {
+            cancelTimeout();
+            if (error != null) {
+                completeExceptionally(AsyncInvoker.unwrap(error));
+            } else {
+                complete(value);
+            }
+            finished(this);
+        }
+
+        /**
+         * Expiry of the branch's timeout; Hands off to the scope's executor, so that neither the branch's dependents nor the next queued
+         * task run on the timer thread
+         */
+        @Override
+        public void run() {
+            if (isDone()) {
+                return;
+            }
+            try {
+                executor.execute(this::expire);
+            } catch (RejectedExecutionException e) {
+                ForkJoinPool.commonPool().execute(this::expire);
+            }
+        }
+
+        private void expire() {
+            if (completeExceptionally(new BranchTimeoutException(timeoutNanos))) {
+                timeouts.incrementAndGet();
+                cancelStage(stage);
+                finished(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean wasCancelled = super.cancel(mayInterruptIfRunning);
+            if (wasCancelled) {
+                cancelTimeout();
+                cancelStage(stage);
+                finished(this);
+            }
+            return wasCancelled;
+        }
+
+        private void cancelTimeout() {
+            ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    private final AsyncScopeSettings settings;
+
+    private final int maxParallelism;
+
+    /**
+     * Branches that have been started and haven't finished; Guarded by {@code this}
+     */
+    private final Set<Branch<?>> running = new LinkedHashSet<>();
+
+    private final Queue<Branch<?>> queued = new ArrayDeque<>();
+
+    private int forks;
+
+    private int peakConcurrency;
+
+    private boolean closed;
+
+    /**
+     * Number of finished branches whose slot hasn't been handed to a queued branch yet; Whichever thread raises it from zero starts them
+     */
+    private final AtomicInteger starts = new AtomicInteger();
+
+    private volatile Executor executor = ForkJoinPool.commonPool();
+
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    private final AtomicInteger timeouts = new AtomicInteger();
+
+    /**
+     * @param settings
+     *     Parallelism limit and metrics for the scope
+     */
+    public AsyncScope(@NonNull AsyncScopeSettings settings) {
+        this.settings = settings;
+        this.maxParallelism = settings.getMaxParallelism();
+    }
+
+    /**
+     * Runs a child task once fewer than the parallelism limit are running
+     *
+     * @param task
+     *     Starts the task, returning a stage that completes with its result
+     *
+     * @return A future completed with the task's result, or cancelled if the scope is closed first
+     */
+    public <T> CompletableFuture<T> fork(@NonNull Supplier<? extends CompletionStage<T>> task) {
+        return fork(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs a child task once fewer than the parallelism limit are running, failing it with a {@link TimeoutException} if it doesn't
+     * complete in time
+     *
+     * @param task
+     *     Starts the task, returning a stage that completes with its result
+     * @param timeout
+     *     How long the task may run once started, or {@code 0} for no limit
+     * @param unit
+     *     Unit of {@code timeout}
+     *
+     * @return A future completed with the task's result, or cancelled if the scope is closed first
+     */
+    public <T> CompletableFuture<T> fork(@NonNull Supplier<? extends CompletionStage<T>> task, long timeout, @NonNull TimeUnit unit) {
+        Branch<T> branch = new Branch<>(task, unit.toNanos(timeout));
+        synchronized (this) {
+            if (closed) {
+                branch.cancel(false);
+                return branch;
+            }
+            forks++;
+            if (running.size() >= maxParallelism) {
+                queued.add(branch);
+                return branch;
+            }
+            running.add(branch);
+            peakConcurrency = Math.max(peakConcurrency, running.size());
+        }
+        branch.start();
+        return branch;
+    }
+
+    /**
+     * Completes with the results of every stage, in order; Fails as soon as any of them fails, cancelling the rest
+     */
+    @SafeVarargs
+    public final <T> CompletableFuture<List<T>> allOf(CompletionStage<? extends T>... stages) {
+        return allOf(Arrays.asList(stages));
+    }
+
+    /**
+     * Completes with the results of every stage, in order; Fails as soon as any of them fails, cancelling the rest
+     */
+    public <T> CompletableFuture<List<T>> allOf(@NonNull List<? extends CompletionStage<? extends T>> stages) {
+        CompletableFuture<List<T>> all = new CompletableFuture<>();
+        if (stages.isEmpty()) {
+            all.complete(Collections.emptyList());
+            return all;
+        }
+        Object[] results = new Object[stages.size()];
+        AtomicInteger remaining = new AtomicInteger(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            int index = i;
+            stages.get(i).whenComplete((value, error) -> {
+                if (error != null) {
+                    if (all.completeExceptionally(AsyncInvoker.unwrap(error))) {
+                        stages.forEach(AsyncScope::cancelStage);
+                    }
+                } else {
+                    results[index] = value;
+                    if (remaining.decrementAndGet() == 0) {
+                        @SuppressWarnings("unchecked")
+                        List<T> values = (List<T>) Arrays.asList(results);
+                        all.complete(values);
+                    }
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * Completes with the result of the first stage to succeed, cancelling the rest; Fails with the last failure if every stage fails
+     */
+    @SafeVarargs
+    public final <T> CompletableFuture<T> anyOf(CompletionStage<? extends T>... stages) {
+        return anyOf(Arrays.asList(stages));
+    }
+
+    /**
+     * Completes with the result of the first stage to succeed, cancelling the rest; Fails with the last failure if every stage fails
+     */
+    public <T> CompletableFuture<T> anyOf(@NonNull List<? extends CompletionStage<? extends T>> stages) {
+        CompletableFuture<T> any = new CompletableFuture<>();
+        if (stages.isEmpty()) {
+            any.completeExceptionally(new IllegalArgumentException("anyOf requires at least one stage"));
+            return any;
+        }
+        AtomicInteger remaining = new AtomicInteger(stages.size());
+        for (CompletionStage<? extends T> stage : stages) {
+            stage.whenComplete((value, error) -> {
+                if (error == null) {
+                    if (any.complete(value)) {
+                        stages.forEach(AsyncScope::cancelStage);
+                    }
+                } else if (remaining.decrementAndGet() == 0) {
+                    any.completeExceptionally(AsyncInvoker.unwrap(error));
+                }
+            });
+        }
+        return any;
+    }
+
+    /**
+     * @return Number of tasks forked so far
+     */
+    public synchronized int getForks() {
+        return forks;
+    }
+
+    /**
+     * @return Largest number of tasks that have run at once
+     */
+    public synchronized int getPeakConcurrency() {
+        return peakConcurrency;
+    }
+
+    /**
+     * @return Number of tasks cancelled because the scope was closed before they finished
+     */
+    public int getCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return Number of tasks that timed out
+     */
+    public int getTimeouts() {
+        return timeouts.get();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Sets the executor that tasks released by a timeout start on; Defaults to the common pool
+     */
+    void setExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    private void finished(Branch<?> branch) {
+        synchronized (this) {
+            if (!running.remove(branch) || closed || queued.isEmpty()) {
+                return;
+            }
+        }
+        if (starts.getAndIncrement() != 0) {
+            // Another thread is already starting queued branches, and will pick this slot up as well
+            return;
+        }
+        // A loop rather than recursion, since a queued task whose stage has already completed frees its slot again before start returns
+        do {
+            Branch<?> next;
+            synchronized (this) {
+                next = closed || running.size() >= maxParallelism ? null : queued.poll();
+                if (next != null) {
+                    running.add(next);
+                    peakConcurrency = Math.max(peakConcurrency, running.size());
+                }
+            }
+            if (next != null) {
+                next.start();
+            }
+        } while (starts.decrementAndGet() != 0);
+    }
+
+    /**
+     * Cancels every task that hasn't finished yet, and reports the scope's statistics; Forking afterwards returns cancelled futures
+     */
+    @Override
+    public void close() {
+        List<Branch<?>> unfinished;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unfinished = new ArrayList<>(running.size() + queued.size());
+            unfinished.addAll(running);
+            unfinished.addAll(queued);
+            running.clear();
+            queued.clear();
+        }
+        for (Branch<?> branch : unfinished) {
+            if (branch.cancel(false)) {
+                cancelled.incrementAndGet();
+            }
+        }
+        settings.report(this);
+    }
+
+    /**
+     * Closes the scope once the response has been written, whether it completed, failed or was cancelled
+     */
+    @Override
+    public void onComplete(Throwable throwable) {
+        close();
+    }
+
+    /**
+     * Closes the scope if Jersey finds that the client disconnected before the response could be written
+     */
+    @Override
+    public void onDisconnect(AsyncResponse disconnected) {
+        close();
+    }
+
+    private static void cancelStage(CompletionStage<?> stage) {
+        if (stage instanceof Future) {
+            ((Future<?>) stage).cancel(false);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.glassfish.hk2.api.Factory;
+import org.glassfish.jersey.server.ContainerRequest;
+
+/**
+ * Creates the {@link AsyncScope} of each request, and closes it when the request scope ends in case the response never completed
+ *
+ * @author Bryan Harclerode
+ */
+class AsyncScopeFactory implements Factory<AsyncScope> {
+
+    private final AsyncScopeSettings settings;
+
+    private final Provider<ContainerRequest> requestProvider;
+
+    @Inject
+    AsyncScopeFactory(AsyncScopeSettings settings, Provider<ContainerRequest> requestProvider) {
+        this.settings = settings;
+        this.requestProvider = requestProvider;
+    }
+
+    @Override
+    public AsyncScope provide() {
+        AsyncScope scope = new AsyncScope(settings);
+        // Lets the invoker find the scope, so that it can close it when the response completes
+        requestProvider.get().setProperty(AsyncScope.PROPERTY, scope);
+        return scope;
+    }
+
+    @Override
+    public void dispose(AsyncScope scope) {
+        scope.close();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+
+import lombok.Getter;
+
+/**
+ * Parallelism limit of each request's {@link AsyncScope}, and the statistics they report once their request completes
+ *
+ * @author Bryan Harclerode
+ */
+public class AsyncScopeSettings {
+
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+
+    @Getter
+    private final int maxParallelism;
+
+    /**
+     * Number of tasks forked by each request
+     */
+    @Getter
+    private final Histogram forks = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Largest number of tasks each request ran at once
+     */
+    @Getter
+    private final Histogram peakConcurrency = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Tasks cancelled because their request completed before they did
+     */
+    @Getter
+    private final Meter cancelled = new Meter();
+
+    /**
+     * Tasks that exceeded their timeout
+     */
+    @Getter
+    private final Meter timeouts = new Meter();
+
+    /**
+     * @param maxParallelism
+     *     Largest number of tasks each scope runs at once; Further forks are queued
+     */
+    public AsyncScopeSettings(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    void report(AsyncScope scope) {
+        int forked = scope.getForks();
+        if (forked == 0) {
+            return;
+        }
+        forks.update(forked);
+        peakConcurrency.update(scope.getPeakConcurrency());
+        if (scope.getCancelled() > 0) {
+            cancelled.mark(scope.getCancelled());
+        }
+        if (scope.getTimeouts() > 0) {
+            timeouts.mark(scope.getTimeouts());
+        }
+    }
+}
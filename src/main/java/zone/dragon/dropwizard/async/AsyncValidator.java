@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names a cheap companion method that computes the validator of an asynchronous {@code GET} resource method's entity, so that conditional
+ * requests can be answered without invoking the resource method.
+ * <p>
+ * The companion method must be declared on the same resource class, and take either no parameters or the same parameters as the
+ * resource method (in which case it is called with the same values, except that {@link AsyncParam} parameters are {@code null}). It
+ * returns an {@link javax.ws.rs.core.EntityTag EntityTag}, a {@link java.util.Date Date} or {@link java.time.Instant Instant} of when the
+ * entity was last modified, or a {@link java.util.concurrent.CompletionStage CompletionStage} of one of them. If the request's
+ * preconditions match, the request is resumed with {@code 304 Not Modified} (or {@code 412 Precondition Failed}) without invoking the
+ * resource method; Otherwise the validator is added to the full response as its {@code ETag} or {@code Last-Modified} header.
+ *
+ * @author Bryan Harclerode
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface AsyncValidator {
+
+    /**
+     * @return Name of the companion method
+     */
+    String value();
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.ConstrainedTo;
+import javax.ws.rs.RuntimeType;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.model.Parameter;
+import org.glassfish.jersey.spi.Contract;
+
+/**
+ * Resolves {@link AsyncParam} parameters of asynchronous resource methods without blocking, e.g. by loading the current user or account
+ * from a remote service. Providers are registered like any other provider, e.g. {@code environment.jersey().register(new UserProvider())};
+ * When more than one provider can resolve a parameter, the first one in {@code @Priority} order is used.
+ *
+ * @author Bryan Harclerode
+ */
+@Contract
+@ConstrainedTo(RuntimeType.SERVER)
+public interface AsyncValueProvider {
+
+    /**
+     * Checked once for each {@link AsyncParam} parameter when the resource method's dispatcher is created
+     *
+     * @param parameter
+     *     Parameter to resolve
+     *
+     * @return {@code true} if this provider can resolve values for the parameter
+     */
+    boolean canResolve(Parameter parameter);
+
+    /**
+     * Starts looking up the value for a parameter; Must not block.
+     *
+     * @param request
+     *     Request being dispatched
+     * @param parameter
+     *     Parameter to resolve
+     *
+     * @return Stage that completes with the parameter's value; Completing it exceptionally fails the request, and the exception is handled
+     * by the registered exception mappers.
+     */
+    CompletionStage<?> resolve(ContainerRequest request, Parameter parameter);
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntSupplier;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.message.MessageBodyWorkers;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ExtendedResourceContext;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Warms up the dispatch path of every asynchronous resource method when the Jersey container starts, which in Dropwizard happens before
+ * the connectors begin accepting traffic. Using the processed resource model, it:
+ * <ol>
+ * <li>looks up the {@link MessageBodyWriter} for each method's unwrapped response type and produced media type, and builds the Jackson
+ * serializer for it if an {@link ObjectMapper} is configured</li>
+ * <li>sends the configured synthetic requests through the {@link ApplicationHandler} in memory, {@code iterations} times each, so that the
+ * whole path (including the real {@link AsyncInvoker}s and the resource methods themselves) is loaded and compiled</li>
+ * </ol>
+ * Jersey has already created each method's dispatcher by the time the container starts, so only requests warm up the invokers.
+ * Each step logs how long it took, and the timings are available from {@link #getTimings()}. Synthetic requests really invoke the resource
+ * methods, so only configure requests that are safe to repeat.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+public class AsyncWarmup implements ContainerLifecycleListener {
+
+    /**
+     * Longest time to wait for a single synthetic request before skipping its remaining iterations
+     */
+    static final long REQUEST_TIMEOUT_SECONDS = 10;
+
+    private static final URI BASE_URI = URI.create("http://localhost/");
+
+    @Value
+    private static class WarmupRequest {
+
+        String method;
+
+        String path;
+
+        String accept;
+    }
+
+    private final int iterations;
+
+    private final List<WarmupRequest> requests = new ArrayList<>();
+
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    @Getter
+    private ObjectMapper objectMapper;
+
+    /**
+     * @param iterations
+     *     Number of times each synthetic request is sent
+     */
+    public AsyncWarmup(int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("iterations must not be negative");
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Sends a synthetic {@code GET} request for {@code path}, relative to the root of the Jersey application, during warm-up
+     */
+    public AsyncWarmup withRequest(@NonNull String path) {
+        return withRequest("GET", path, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Sends a synthetic request during warm-up
+     *
+     * @param method
+     *     HTTP method of the request
+     * @param path
+     *     Path of the request, relative to the root of the Jersey application
+     * @param accept
+     *     Value of the request's {@code Accept} header
+     */
+    public AsyncWarmup withRequest(@NonNull String method, @NonNull String path, @NonNull String accept) {
+        requests.add(new WarmupRequest(method, path.startsWith("/") ? path.substring(1) : path, accept));
+        return this;
+    }
+
+    /**
+     * Builds Jackson serializers for each asynchronous response type with the given mapper
+     */
+    public AsyncWarmup withObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        return this;
+    }
+
+    /**
+     * @return How long each warm-up step took, in milliseconds, in the order they ran
+     */
+    public Map<String, Long> getTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    @Override
+    public void onStartup(Container container) {
+        ApplicationHandler handler = container.getApplicationHandler();
+        ServiceLocator serviceLocator = handler.getServiceLocator();
+        Map<ResourceMethod, Type> methods = new LinkedHashMap<>();
+        AsyncModelProcessor processor = new AsyncModelProcessor();
+        for (Resource resource : serviceLocator.getService(ExtendedResourceContext.class).getResourceModel().getResources()) {
+            collectAsyncMethods(processor, resource, methods);
+        }
+        long start = System.nanoTime();
+        time("writers", () -> warmWriters(serviceLocator, methods));
+        if (!requests.isEmpty() && iterations > 0) {
+            time("requests", () -> warmRequests(handler));
+        }
+        log.info("Async warm-up finished in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static void collectAsyncMethods(AsyncModelProcessor processor, Resource resource, Map<ResourceMethod, Type> methods) {
+        for (ResourceMethod method : resource.getResourceMethods()) {
+            Type responseType = processor.isAsyncMethod(method);
+            if (responseType != null) {
+                methods.put(method, responseType);
+            }
+        }
+        for (Resource child : resource.getChildResources()) {
+            collectAsyncMethods(processor, child, methods);
+        }
+    }
+
+    private void time(String step, IntSupplier warmup) {
+        long start = System.nanoTime();
+        int count = warmup.getAsInt();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        timings.put(step, elapsed);
+        log.info("Async warm-up of {} ({}) took {}ms", step, count, elapsed);
+    }
+
+    private int warmWriters(ServiceLocator serviceLocator, Map<ResourceMethod, Type> methods) {
+        MessageBodyWorkers workers = serviceLocator.getService(MessageBodyWorkers.class);
+        int count = 0;
+        for (Map.Entry<ResourceMethod, Type> entry : methods.entrySet()) {
+            ResourceMethod method = entry.getKey();
+            Type type = entry.getValue();
+            Class<?> rawType = Types.rawType(type);
+            if (rawType == Object.class || rawType == Void.class || Response.class.isAssignableFrom(rawType)) {
+                // The entity type isn't known until the method returns
+                continue;
+            }
+            Annotation[] annotations = method.getInvocable().getHandlingMethod().getDeclaredAnnotations();
+            List<MediaType> mediaTypes = method.getProducedTypes();
+            if (mediaTypes.isEmpty()) {
+                mediaTypes = Collections.singletonList(MediaType.WILDCARD_TYPE);
+            }
+            for (MediaType mediaType : mediaTypes) {
+                if (workers.getMessageBodyWriter(rawType, type, annotations, mediaType) != null) {
+                    count++;
+                }
+                if (objectMapper != null && isJson(mediaType)) {
+                    // Writers are created with the root serializer prefetched, which caches it in the mapper
+                    objectMapper.writerFor(objectMapper.constructType(type));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isJson(MediaType mediaType) {
+        return mediaType.isWildcardSubtype() || mediaType.getSubtype().equals("json") || mediaType.getSubtype().endsWith("+json");
+    }
+
+    private int warmRequests(ApplicationHandler handler) {
+        int count = 0;
+        for (WarmupRequest warmupRequest : requests) {
+            for (int i = 0; i < iterations; i++) {
+                ContainerRequest request = new ContainerRequest(
+                    BASE_URI,
+                    BASE_URI.resolve(warmupRequest.getPath()),
+                    warmupRequest.getMethod(),
+                    null,
+                    new MapPropertiesDelegate()
+                );
+                request.header(HttpHeaders.ACCEPT, warmupRequest.getAccept());
+                try {
+                    ContainerResponse response = handler.apply(request).get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    if (i == 0 && response.getStatus() >= 400) {
+                        log.warn(
+                            "Warm-up request {} {} returned {}",
+                            warmupRequest.getMethod(),
+                            warmupRequest.getPath(),
+                            response.getStatus()
+                        );
+                    }
+                    count++;
+                } catch (TimeoutException error) {
+                    log.warn("Warm-up request {} {} timed out; Skipping it", warmupRequest.getMethod(), warmupRequest.getPath());
+                    break;
+                } catch (ExecutionException error) {
+                    log.warn("Warm-up request {} {} failed", warmupRequest.getMethod(), warmupRequest.getPath(), error.getCause());
+                    break;
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                    return count;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void onReload(Container container) {
+        onStartup(container);
+    }
+
+    @Override
+    public void onShutdown(Container container) { }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Batches point lookups made by concurrent requests into a single call to a downstream service. Keys passed to {@link #load(Object)} are
+ * collected until either the batch window elapses or the batch reaches its maximum size, and then the whole batch is loaded with one call
+ * to the batch function; Each caller's future is completed with the value for its own key, or {@code null} if the result didn't include
+ * it. Keys requested more than once in the same batch are only loaded once, but each caller gets its own future, so cancelling one doesn't
+ * affect the others.
+ * <p>
+ * The number of keys in each batch, how long keys waited for their batch to be dispatched, and how long each batch call took are reported
+ * by {@link #getBatchSizes()}, {@link #getWaitTimes()} and {@link #getLoadTimes()}. Until the loader is {@link #start() started} (and
+ * after it is stopped), every key is loaded on its own as soon as it is requested.
+ *
+ * @param <K>
+ *     Type of the keys to load
+ * @param <V>
+ *     Type of the loaded values
+ *
+ * @author Bryan Harclerode
+ */
+public class BatchLoader<K, V> implements Managed {
+
+    /**
+     * Keys collected for a single call to the batch function
+     */
+    private final class Batch implements Runnable {
+
+        private final long openedNanos = System.nanoTime();
+
+        private final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+
+        private ScheduledFuture<?> flush;
+
+        /**
+         * Dispatches this batch once its window has elapsed, unless it has already been dispatched for being full
+         */
+        @Override
+        public void run() {
+            synchronized (BatchLoader.this) {
+                if (current != this) {
+                    return;
+                }
+                current = null;
+            }
+            dispatch(this);
+        }
+    }
+
+    private final Function<Set<K>, ? extends CompletionStage<Map<K, V>>> batchFunction;
+
+    private final int maxBatchSize;
+
+    private final long windowNanos;
+
+    @Getter
+    private final Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
+
+    @Getter
+    private final Timer waitTimes = new Timer();
+
+    @Getter
+    private final Timer loadTimes = new Timer();
+
+    /**
+     * Batch currently collecting keys; Guarded by {@code this}
+     */
+    private Batch current;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * @param batchFunction
+     *     Loads the values for a set of keys with one downstream call; It is called on the thread that closes the batch, so it should
+     *     return without blocking
+     * @param maxBatchSize
+     *     Number of keys at which a batch is dispatched without waiting for the rest of its window
+     * @param window
+     *     How long to collect keys after the first key of a batch is requested
+     * @param unit
+     *     Unit of {@code window}
+     */
+    public BatchLoader(
+        @NonNull Function<Set<K>, ? extends CompletionStage<Map<K, V>>> batchFunction, int maxBatchSize, long window, @NonNull TimeUnit unit
+    ) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Loads the value for {@code key} as part of the next batch
+     *
+     * @return A future completed with the value for {@code key}, or {@code null} if the batch function didn't return one; Cancelling it
+     *     doesn't cancel the lookup for other callers of the same key
+     */
+    public CompletableFuture<V> load(@NonNull K key) {
+        Batch full = null;
+        CompletableFuture<V> shared;
+        synchronized (this) {
+            if (scheduler == null || windowNanos <= 0) {
+                full = new Batch();
+                shared = full.futures.computeIfAbsent(key, ignored -> new CompletableFuture<>());
+            } else {
+                if (current == null) {
+                    current = new Batch();
+                    current.flush = scheduler.schedule(current, windowNanos, TimeUnit.NANOSECONDS);
+                }
+                shared = current.futures.computeIfAbsent(key, ignored -> new CompletableFuture<>());
+                if (current.futures.size() >= maxBatchSize) {
+                    full = current;
+                    current = null;
+                    full.flush.cancel(false);
+                }
+            }
+        }
+        // Each caller gets a copy, since the shared future could otherwise be cancelled or completed by any one of them
+        CompletableFuture<V> future = new CompletableFuture<>();
+        shared.whenComplete((value, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(value);
+            }
+        });
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private void dispatch(Batch batch) {
+        long startNanos = System.nanoTime();
+        batchSizes.update(batch.futures.size());
+        waitTimes.update(startNanos - batch.openedNanos, TimeUnit.NANOSECONDS);
+        CompletionStage<Map<K, V>> values;
+        try {
+            values = batchFunction.apply(Collections.unmodifiableSet(batch.futures.keySet()));
+        } catch (Throwable error) {
+            complete(batch, null, error, startNanos);
+            return;
+        }
+        values.whenComplete((result, error) -> complete(batch, result, error, startNanos));
+    }
+
+    private void complete(Batch batch, Map<K, V> values, Throwable error, long startNanos) {
+        loadTimes.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        for (Map.Entry<K, CompletableFuture<V>> entry : batch.futures.entrySet()) {
+            if (error != null) {
+                entry.getValue().completeExceptionally(AsyncInvoker.unwrap(error));
+            } else {
+                entry.getValue().complete(values == null ? null : values.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "batch-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Dispatches the batch that is still collecting keys, and loads any keys requested afterwards on their own
+     */
+    @Override
+    public void stop() {
+        Batch remaining;
+        synchronized (this) {
+            remaining = current;
+            current = null;
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        if (remaining != null) {
+            dispatch(remaining);
+        }
+    }
+}
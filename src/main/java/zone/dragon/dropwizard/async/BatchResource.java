@@ -0,0 +1,469 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerResponseWriter;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.google.common.collect.ImmutableSet;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Endpoint that runs many sub-requests against the Jersey application in one HTTP call. Sub-requests are routed in-process through the
+ * {@link ApplicationHandler}, so asynchronous resource methods run concurrently, up to a cap per batch; Each response is streamed back as
+ * soon as it can be, as one line of newline-delimited JSON:
+ * <pre>
+ * {"index":0,"status":200,"headers":{"Content-Type":"application/json"},"body":{...}}
+ * </pre>
+ * Headers with more than one value are written as an array of their values.
+ * Responses are written in the order of the sub-requests, unless {@code ?order=completion} is given, in which case they are written in
+ * the order they complete. JSON response bodies are embedded as-is; Other bodies are embedded as strings.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+@Path("batch")
+public class BatchResource {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Property set on every sub-request, so that a sub-request can never start another batch
+     */
+    static final String SUB_REQUEST = BatchResource.class.getName() + ".subRequest";
+
+    /**
+     * Headers of the batch request that aren't inherited by its sub-requests, since they describe the batch request's own entity
+     */
+    private static final ImmutableSet<String> ENTITY_HEADERS = ImmutableSet.of(
+        HttpHeaders.CONTENT_TYPE.toLowerCase(Locale.ROOT),
+        HttpHeaders.CONTENT_LENGTH.toLowerCase(Locale.ROOT),
+        HttpHeaders.CONTENT_ENCODING.toLowerCase(Locale.ROOT),
+        "transfer-encoding"
+    );
+
+    /**
+     * Runs the sub-requests of a single call, writing each response as soon as it is allowed to
+     */
+    private final class Batch {
+
+        private final ContainerRequest parent;
+
+        private final List<BatchRequest> requests;
+
+        private final boolean completionOrder;
+
+        private final ChunkedOutput<String> output = new ChunkedOutput<>(String.class, "\n");
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        /**
+         * Sub-requests waiting to be started; Only the thread that raises it from zero starts them, so sub-requests that complete
+         * synchronously queue the next start instead of recursing into it
+         */
+        private final AtomicInteger starts = new AtomicInteger();
+
+        /**
+         * Responses that can't be written yet because an earlier sub-request hasn't completed; Guarded by {@code this}
+         */
+        private final String[] pending;
+
+        private int written;
+
+        Batch(ContainerRequest parent, List<BatchRequest> requests, boolean completionOrder) {
+            this.parent = parent;
+            this.requests = requests;
+            this.completionOrder = completionOrder;
+            this.pending = new String[requests.size()];
+        }
+
+        void start() {
+            if (requests.isEmpty()) {
+                close();
+                return;
+            }
+            for (int i = 0; i < Math.min(maxConcurrency, requests.size()); i++) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            if (starts.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                int index = next.getAndIncrement();
+                if (index < requests.size()) {
+                    run(index);
+                }
+            } while (starts.decrementAndGet() != 0);
+        }
+
+        private void run(int index) {
+            ContainerRequest subRequest;
+            try {
+                subRequest = subRequest(parent, requests.get(index));
+            } catch (IOException | RuntimeException error) {
+                complete(index, error(index, error));
+                return;
+            }
+            subRequest.setWriter(new SubResponseWriter(this, index));
+            handler.handle(subRequest);
+        }
+
+        private void complete(int index, String line) {
+            synchronized (this) {
+                if (completionOrder) {
+                    write(line);
+                    written++;
+                } else {
+                    pending[index] = line;
+                    while (written < pending.length && pending[written] != null) {
+                        write(pending[written]);
+                        pending[written] = null;
+                        written++;
+                    }
+                }
+                if (written == pending.length) {
+                    close();
+                    return;
+                }
+            }
+            startNext();
+        }
+
+        private void write(String line) {
+            try {
+                output.write(line);
+            } catch (IOException error) {
+                log.debug("Failed to write batch response; The client has probably disconnected", error);
+            }
+        }
+
+        private void close() {
+            try {
+                output.close();
+            } catch (IOException error) {
+                log.debug("Failed to close batch response", error);
+            }
+        }
+    }
+
+    /**
+     * Buffers the response of a single sub-request, and writes it to the batch once it has been committed
+     */
+    private final class SubResponseWriter implements ContainerResponseWriter {
+
+        private final Batch batch;
+
+        private final int index;
+
+        private final ByteArrayOutputStream entity = new ByteArrayOutputStream();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private volatile ContainerResponse response;
+
+        SubResponseWriter(Batch batch, int index) {
+            this.batch = batch;
+            this.index = index;
+        }
+
+        @Override
+        public OutputStream writeResponseStatusAndHeaders(long contentLength, ContainerResponse response) {
+            this.response = response;
+            return entity;
+        }
+
+        @Override
+        public boolean suspend(long timeOut, TimeUnit timeUnit, TimeoutHandler timeoutHandler) {
+            return true;
+        }
+
+        @Override
+        public void setSuspendTimeout(long timeOut, TimeUnit timeUnit) { }
+
+        @Override
+        public void commit() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            String line;
+            if (response == null) {
+                line = error(index, new IllegalStateException("No response was written"));
+            } else {
+                try {
+                    line = line(index, response, entity.toByteArray());
+                } catch (IOException error) {
+                    line = error(index, error);
+                }
+            }
+            batch.complete(index, line);
+        }
+
+        @Override
+        public void failure(Throwable error) {
+            if (completed.compareAndSet(false, true)) {
+                batch.complete(index, error(index, error));
+            }
+        }
+
+        @Override
+        public boolean enableResponseBuffering() {
+            return true;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    private final int maxRequests;
+
+    private final int maxConcurrency;
+
+    private volatile ApplicationHandler handler;
+
+    /**
+     * @param objectMapper
+     *     Mapper used to write the responses
+     * @param maxRequests
+     *     Largest number of sub-requests accepted in a single call
+     * @param maxConcurrency
+     *     Largest number of sub-requests of a single call that run at once
+     */
+    public BatchResource(@NonNull ObjectMapper objectMapper, int maxRequests, int maxConcurrency) {
+        if (maxRequests < 1 || maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxRequests and maxConcurrency must be at least 1");
+        }
+        this.objectMapper = objectMapper;
+        this.maxRequests = maxRequests;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return A listener that gives this resource the application to route sub-requests through; Must be registered along with it
+     */
+    public ContainerLifecycleListener containerListener() {
+        return new ContainerLifecycleListener() {
+            @Override
+            public void onStartup(Container container) {
+                handler = container.getApplicationHandler();
+            }
+
+            @Override
+            public void onReload(Container container) {
+                handler = container.getApplicationHandler();
+            }
+
+            @Override
+            public void onShutdown(Container container) { }
+        };
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON)
+    public ChunkedOutput<String> batch(
+        @Context ContainerRequest request, @QueryParam("order") @DefaultValue("request") String order, List<BatchRequest> requests
+    ) {
+        if (handler == null) {
+            throw new ServiceUnavailableException();
+        }
+        if (request.getProperty(SUB_REQUEST) != null) {
+            throw new BadRequestException("Batches can't be nested");
+        }
+        if (requests == null) {
+            throw new BadRequestException("A list of sub-requests is required");
+        }
+        if (requests.size() > maxRequests) {
+            throw new BadRequestException("At most " + maxRequests + " sub-requests are allowed in a batch");
+        }
+        if (!order.equals("request") && !order.equals("completion")) {
+            throw new BadRequestException("order must be either request or completion");
+        }
+        for (BatchRequest subRequest : requests) {
+            if (subRequest.getPath() == null || subRequest.getMethod() == null) {
+                throw new BadRequestException("Every sub-request needs a method and a path");
+            }
+            if (isBatch(request.getBaseUri(), resolve(request.getBaseUri(), subRequest))) {
+                throw new BadRequestException("Batches can't be nested");
+            }
+        }
+        Batch batch = new Batch(request, requests, order.equals("completion"));
+        batch.start();
+        return batch.output;
+    }
+
+    /**
+     * Resolves the sub-request's path against the application, rejecting paths that resolve outside of it
+     */
+    static URI resolve(URI baseUri, BatchRequest request) {
+        String path = request.getPath();
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        URI uri;
+        try {
+            uri = baseUri.resolve(path).normalize();
+        } catch (IllegalArgumentException error) {
+            throw new BadRequestException("Invalid sub-request path " + request.getPath());
+        }
+        if (!Objects.equals(uri.getScheme(), baseUri.getScheme())
+            || !Objects.equals(uri.getRawAuthority(), baseUri.getRawAuthority())
+            || uri.getRawPath() == null
+            || !uri.getRawPath().startsWith(baseUri.getRawPath())
+            || uri.getRawPath().contains("/../")
+            || uri.getRawPath().endsWith("/..")) {
+            throw new BadRequestException("Sub-request paths must be within the application");
+        }
+        return uri;
+    }
+
+    /**
+     * @return {@code true} if the resolved URI is routed to this resource; Compares the decoded path, ignoring matrix parameters, the same
+     *     way Jersey matches it
+     */
+    static boolean isBatch(URI baseUri, URI uri) {
+        String path = uri.getPath().substring(baseUri.getPath().length());
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        int end = path.indexOf('/');
+        String segment = end < 0 ? path : path.substring(0, end);
+        int matrix = segment.indexOf(';');
+        return (matrix < 0 ? segment : segment.substring(0, matrix)).equals("batch");
+    }
+
+    private ContainerRequest subRequest(ContainerRequest parent, BatchRequest request) throws JsonProcessingException {
+        URI baseUri = parent.getBaseUri();
+        ContainerRequest subRequest = new ContainerRequest(
+            baseUri,
+            resolve(baseUri, request),
+            request.getMethod(),
+            parent.getSecurityContext(),
+            new MapPropertiesDelegate()
+        );
+        subRequest.setProperty(SUB_REQUEST, true);
+        for (Map.Entry<String, List<String>> header : parent.getHeaders().entrySet()) {
+            if (!ENTITY_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                subRequest.getHeaders().addAll(header.getKey(), header.getValue());
+            }
+        }
+        subRequest.getHeaders().putSingle(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        if (request.getBody() != null) {
+            subRequest.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            subRequest.setEntityStream(new ByteArrayInputStream(objectMapper.writeValueAsBytes(request.getBody())));
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            subRequest.getHeaders().putSingle(header.getKey(), header.getValue());
+        }
+        return subRequest;
+    }
+
+    private String line(int index, ContainerResponse response, byte[] entity) throws JsonProcessingException {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("index", index);
+        line.put("status", response.getStatus());
+        ObjectNode headers = line.putObject("headers");
+        for (Map.Entry<String, List<String>> header : response.getStringHeaders().entrySet()) {
+            List<String> values = header.getValue();
+            if (values.size() == 1) {
+                headers.put(header.getKey(), values.get(0));
+            } else if (values.size() > 1) {
+                ArrayNode array = headers.putArray(header.getKey());
+                values.forEach(array::add);
+            }
+        }
+        if (entity.length > 0) {
+            MediaType mediaType = response.getMediaType();
+            if (mediaType != null && (mediaType.getSubtype().equals("json") || mediaType.getSubtype().endsWith("+json"))) {
+                line.putRawValue("body", new RawValue(new String(entity, StandardCharsets.UTF_8)));
+            } else {
+                line.put("body", new String(entity, StandardCharsets.UTF_8));
+            }
+        }
+        return objectMapper.writeValueAsString(line);
+    }
+
+    /**
+     * Reports a sub-request that failed without producing a response; Client errors, such as an invalid path, keep their status, and
+     * anything else is reported as {@code 500 Internal Server Error}
+     */
+    private String error(int index, Throwable error) {
+        int status = 500;
+        if (error instanceof WebApplicationException) {
+            status = ((WebApplicationException) error).getResponse().getStatus();
+        }
+        if (status >= 500) {
+            log.warn("Batch sub-request {} failed", index, error);
+        } else {
+            log.debug("Batch sub-request {} was rejected", index, error);
+        }
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("index", index);
+        line.put("status", status);
+        line.putObject("headers").put(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        ObjectNode body = line.putObject("body");
+        body.put("error", error.getClass().getName());
+        body.put("message", error.getMessage());
+        try {
+            return objectMapper.writeValueAsString(line);
+        } catch (JsonProcessingException serializationError) {
+            throw new IllegalStateException(serializationError);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.RateLimiter;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detects asynchronous resource methods that block request threads. Two kinds of offenders are reported:
+ * <ul>
+ * <li>Resource methods that spend longer than the threshold in their synchronous part, before they return their future. While such a
+ * method is still running, a sampler thread captures its stack so the blocking call can be identified.</li>
+ * <li>Requests that are resumed on a Jetty request thread or from inside another resource method's invocation, which means that the
+ * serialization of their response (and anything chained onto their future) ran on a thread that should have been free.</li>
+ * </ul>
+ * Resumes that are made by design are not reported: a request resumed while registering with its own completed future, waiters resumed by
+ * a {@link LongPollHub#publish(Object, Object) publish} (typically made from another request's resource method), and the sub-requests of
+ * a {@link BatchResource batch}, which complete on whichever thread is running the batch.
+ * Offenders are counted in the {@code slowInvokes}, {@code resumesInInvoke} and {@code resumesOnRequestThread} meters for each
+ * resource method, logged at most once every {@value #LOG_INTERVAL_SECONDS} seconds, and listed by the {@code async-blocking} admin task.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+public class BlockingDetector implements Managed {
+
+    static final int LOG_INTERVAL_SECONDS = 10;
+
+    /**
+     * State of each thread that has invoked an asynchronous resource method; Reused for every invocation on that thread
+     */
+    private static final class ThreadState {
+
+        private final Thread thread;
+
+        private int depth;
+
+        private volatile String endpoint;
+
+        private volatile long startNanos;
+
+        private volatile StackTraceElement[] sample;
+
+        private boolean requestThread;
+
+        /**
+         * Set while resuming requests is expected on this thread, such as while a request's own dispatch registers with its future or a
+         * long-poll hub delivers a publish
+         */
+        private boolean resumesExpected;
+
+        ThreadState(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * Blocking reported for a single resource method
+     */
+    public static final class Offender {
+
+        @Getter
+        private final String endpoint;
+
+        private final LongAdder slowInvokes = new LongAdder();
+
+        private final LongAdder resumesInInvoke = new LongAdder();
+
+        private final LongAdder resumesOnRequestThread = new LongAdder();
+
+        private final LongAccumulator maxSynchronousNanos = new LongAccumulator(Math::max, 0);
+
+        private final Timer synchronousTimer;
+
+        private final Meter slowInvokesMeter;
+
+        private final Meter resumesInInvokeMeter;
+
+        private final Meter resumesOnRequestThreadMeter;
+
+        private volatile StackTraceElement[] lastSample;
+
+        Offender(String endpoint, MetricRegistry metrics) {
+            this.endpoint = endpoint;
+            synchronousTimer = metrics.timer(MetricRegistry.name(BlockingDetector.class, endpoint, "synchronous"));
+            slowInvokesMeter = metrics.meter(MetricRegistry.name(BlockingDetector.class, endpoint, "slowInvokes"));
+            resumesInInvokeMeter = metrics.meter(MetricRegistry.name(BlockingDetector.class, endpoint, "resumesInInvoke"));
+            resumesOnRequestThreadMeter = metrics.meter(MetricRegistry.name(BlockingDetector.class, endpoint, "resumesOnRequestThread"));
+        }
+
+        boolean isOffending() {
+            return getSlowInvokes() > 0 || getResumesInInvoke() > 0 || getResumesOnRequestThread() > 0;
+        }
+
+        public long getSlowInvokes() {
+            return slowInvokes.sum();
+        }
+
+        public long getResumesInInvoke() {
+            return resumesInInvoke.sum();
+        }
+
+        public long getResumesOnRequestThread() {
+            return resumesOnRequestThread.sum();
+        }
+
+        public long getMaxSynchronousTime(TimeUnit unit) {
+            return unit.convert(maxSynchronousNanos.get(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return The most recent stack captured for this resource method, or {@code null} if none has been captured
+         */
+        public StackTraceElement[] getLastSample() {
+            return lastSample;
+        }
+    }
+
+    private final long thresholdNanos;
+
+    private final MetricRegistry metrics;
+
+    private final Set<ThreadState> threads = ConcurrentHashMap.newKeySet();
+
+    private final ThreadLocal<ThreadState> currentThread = ThreadLocal.withInitial(() -> {
+        ThreadState state = new ThreadState(Thread.currentThread());
+        threads.add(state);
+        return state;
+    });
+
+    private final ConcurrentMap<String, Offender> offenders = new ConcurrentHashMap<>();
+
+    private final RateLimiter logLimiter = RateLimiter.create(1.0 / LOG_INTERVAL_SECONDS);
+
+    private ScheduledExecutorService sampler;
+
+    /**
+     * @param threshold
+     *     Longest time a resource method may spend before returning its future
+     * @param unit
+     *     Unit of {@code threshold}
+     * @param metrics
+     *     Registry to report offenders to
+     */
+    public BlockingDetector(long threshold, @NonNull TimeUnit unit, @NonNull MetricRegistry metrics) {
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return Every resource method that has been reported so far
+     */
+    public List<Offender> getOffenders() {
+        List<Offender> reported = new ArrayList<>();
+        for (Offender offender : offenders.values()) {
+            if (offender.isOffending()) {
+                reported.add(offender);
+            }
+        }
+        return reported;
+    }
+
+    /**
+     * @return A servlet filter that marks the threads it runs on as request threads for as long as the request is being handled
+     */
+    public Filter requestThreadFilter() {
+        return new Filter() {
+            @Override
+            public void init(FilterConfig filterConfig) { }
+
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+                ThreadState state = currentThread.get();
+                boolean wasRequestThread = state.requestThread;
+                state.requestThread = true;
+                try {
+                    chain.doFilter(request, response);
+                } finally {
+                    state.requestThread = wasRequestThread;
+                }
+            }
+
+            @Override
+            public void destroy() { }
+        };
+    }
+
+    /**
+     * Marks the start of a resource method's synchronous part on the current thread
+     */
+    void enter(String endpoint) {
+        ThreadState state = currentThread.get();
+        if (state.depth++ == 0) {
+            state.sample = null;
+            state.startNanos = System.nanoTime();
+            state.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Marks the end of a resource method's synchronous part on the current thread
+     */
+    void exit(String endpoint) {
+        ThreadState state = currentThread.get();
+        if (--state.depth > 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - state.startNanos;
+        state.endpoint = null;
+        Offender offender = offender(endpoint);
+        offender.synchronousTimer.update(elapsed, TimeUnit.NANOSECONDS);
+        if (elapsed > thresholdNanos) {
+            StackTraceElement[] sample = state.sample;
+            offender.slowInvokes.increment();
+            offender.slowInvokesMeter.mark();
+            offender.maxSynchronousNanos.accumulate(elapsed);
+            if (sample != null) {
+                offender.lastSample = sample;
+            }
+            if (logLimiter.tryAcquire()) {
+                log.warn(
+                    "{} spent {}ms before returning its future; It should not block. Sampled stack:{}",
+                    endpoint,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    format(sample)
+                );
+            }
+        }
+    }
+
+    /**
+     * Marks whether requests are expected to be resumed on the current thread, and so shouldn't be reported
+     *
+     * @return Whether they were expected before, so that nested callers can restore it
+     */
+    boolean expectResumes(boolean expected) {
+        ThreadState state = currentThread.get();
+        boolean previous = state.resumesExpected;
+        state.resumesExpected = expected;
+        return previous;
+    }
+
+    /**
+     * Checks whether a request is being resumed on a thread that should not be doing so
+     *
+     * @param endpoint
+     *     Resource method that handled the request being resumed
+     */
+    void checkResume(String endpoint) {
+        ThreadState state = currentThread.get();
+        if (state.resumesExpected) {
+            return;
+        }
+        String invoking = state.endpoint;
+        if (invoking != null) {
+            Offender offender = offender(endpoint);
+            offender.resumesInInvoke.increment();
+            offender.resumesInInvokeMeter.mark();
+            logResume(offender, "inside the invocation of " + invoking);
+        } else if (state.requestThread) {
+            Offender offender = offender(endpoint);
+            offender.resumesOnRequestThread.increment();
+            offender.resumesOnRequestThreadMeter.mark();
+            logResume(offender, "on request thread " + state.thread.getName());
+        }
+    }
+
+    private void logResume(Offender offender, String where) {
+        if (logLimiter.tryAcquire()) {
+            StackTraceElement[] stack = Thread.currentThread().getStackTrace();
+            offender.lastSample = stack;
+            log.warn(
+                "Request to {} was resumed {}; Its future was completed by blocking code:{}",
+                offender.getEndpoint(),
+                where,
+                format(stack)
+            );
+        }
+    }
+
+    private Offender offender(String endpoint) {
+        Offender offender = offenders.get(endpoint);
+        if (offender == null) {
+            offender = offenders.computeIfAbsent(endpoint, name -> new Offender(name, metrics));
+        }
+        return offender;
+    }
+
+    static String format(StackTraceElement[] stack) {
+        if (stack == null) {
+            return " (none captured)";
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (StackTraceElement element : stack) {
+            formatted.append(System.lineSeparator()).append("\tat ").append(element);
+        }
+        return formatted.toString();
+    }
+
+    /**
+     * Captures the stack of every thread that has been in a resource method's synchronous part for longer than the threshold
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        for (ThreadState state : threads) {
+            if (!state.thread.isAlive()) {
+                threads.remove(state);
+            } else if (state.endpoint != null && state.sample == null && now - state.startNanos > thresholdNanos) {
+                state.sample = state.thread.getStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), thresholdNanos / 2);
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "async-blocking-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMultimap;
+
+import io.dropwizard.servlets.tasks.Task;
+import lombok.NonNull;
+
+/**
+ * Admin task that lists the asynchronous resource methods reported by the {@link BlockingDetector}, along with the last stack sampled for
+ * each.
+ *
+ * @author Bryan Harclerode
+ */
+public class BlockingOffendersTask extends Task {
+
+    private final BlockingDetector detector;
+
+    public BlockingOffendersTask(@NonNull BlockingDetector detector) {
+        super("async-blocking");
+        this.detector = detector;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        if (detector.getOffenders().isEmpty()) {
+            output.println("No blocking detected");
+            return;
+        }
+        for (BlockingDetector.Offender offender : detector.getOffenders()) {
+            output.printf(
+                "%s: slowInvokes=%d maxSynchronous=%dms resumesInInvoke=%d resumesOnRequestThread=%d%n",
+                offender.getEndpoint(),
+                offender.getSlowInvokes(),
+                offender.getMaxSynchronousTime(TimeUnit.MILLISECONDS),
+                offender.getResumesInInvoke(),
+                offender.getResumesOnRequestThread()
+            );
+            output.println("  Last sample:" + BlockingDetector.format(offender.getLastSample()).replace("\tat", "    at"));
+            output.println();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.jersey.internal.ExceptionMapperFactory;
+import org.glassfish.jersey.spi.ExceptionMappers;
+import org.glassfish.jersey.spi.ExtendedExceptionMapper;
+
+/**
+ * {@link ExceptionMappers} that remembers which mapper handles each exception class, rather than walking every registered mapper's type
+ * hierarchy each time a request fails; During a downstream outage every request fails the same way, so this turns a search per failure
+ * into a map lookup.
+ * <p>
+ * {@link #find(Class)} and {@link #findMapping(Throwable)} are cached separately, since Jersey breaks ties between mappers at the same
+ * distance differently for the two; {@link ExtendedExceptionMapper}s decide per instance whether they apply, so exceptions that resolve
+ * to one are still looked up each time.
+ *
+ * @author Bryan Harclerode
+ */
+class CachingExceptionMappers implements ExceptionMappers {
+
+    /**
+     * Cached in place of {@code null} for exception classes that no mapper handles
+     */
+    private static final ExceptionMapper<Throwable> NO_MAPPER = exception -> null;
+
+    private final ExceptionMappers delegate;
+
+    private final ConcurrentMap<Class<?>, ExceptionMapper<?>> mappers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, ExceptionMapper<?>> mappings = new ConcurrentHashMap<>();
+
+    @Inject
+    CachingExceptionMappers(ServiceLocator serviceLocator) {
+        this.delegate = new ExceptionMapperFactory(serviceLocator);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Throwable> ExceptionMapper<T> find(Class<T> type) {
+        ExceptionMapper<?> mapper = mappers.get(type);
+        if (mapper == null) {
+            mapper = delegate.find(type);
+            if (mapper == null) {
+                mapper = NO_MAPPER;
+            }
+            mappers.putIfAbsent(type, mapper);
+        }
+        return mapper == NO_MAPPER ? null : (ExceptionMapper<T>) mapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Throwable> ExceptionMapper<T> findMapping(T exceptionInstance) {
+        Class<?> type = exceptionInstance.getClass();
+        ExceptionMapper<?> mapper = mappings.get(type);
+        if (mapper == null) {
+            if (find((Class<T>) type) instanceof ExtendedExceptionMapper) {
+                return delegate.findMapping(exceptionInstance);
+            }
+            mapper = delegate.findMapping(exceptionInstance);
+            if (mapper instanceof ExtendedExceptionMapper) {
+                return (ExceptionMapper<T>) mapper;
+            }
+            if (mapper == null) {
+                mapper = NO_MAPPER;
+            }
+            mappings.putIfAbsent(type, mapper);
+        }
+        return mapper == NO_MAPPER ? null : (ExceptionMapper<T>) mapper;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.primitives.Longs;
+
+import io.dropwizard.servlets.tasks.Task;
+import lombok.NonNull;
+
+/**
+ * Admin task that cancels every suspended asynchronous request older than the number of seconds given in the required
+ * {@code olderThan} parameter. Cancelled requests are resumed with {@code 503 Service Unavailable}.
+ *
+ * @author Bryan Harclerode
+ */
+public class CancelAsyncRequestsTask extends Task {
+
+    private final AsyncRequestTracker tracker;
+
+    public CancelAsyncRequestsTask(@NonNull AsyncRequestTracker tracker) {
+        super("cancel-async-requests");
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) {
+        if (!parameters.containsKey("olderThan")) {
+            output.println("Missing required parameter: olderThan (seconds)");
+            return;
+        }
+        String value = parameters.get("olderThan").iterator().next();
+        Long olderThan = Longs.tryParse(value);
+        if (olderThan == null || olderThan < 0) {
+            output.printf("Invalid parameter: olderThan must be a non-negative number of seconds, not '%s'%n", value);
+            return;
+        }
+        int cancelled = tracker.cancelOlderThan(olderThan, TimeUnit.SECONDS);
+        output.printf("Cancelled %d async requests older than %ds%n", cancelled, olderThan);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.Date;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Adds the validator computed by an {@link AsyncValidator} companion method to the full response, unless the resource method set its
+ * own
+ *
+ * @author Bryan Harclerode
+ */
+public class ConditionalResponseFilter implements ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        if (responseContext.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            return;
+        }
+        Object entityTag = requestContext.getProperty(ConditionalValidator.ENTITY_TAG_PROPERTY);
+        if (entityTag instanceof EntityTag && !responseContext.getHeaders().containsKey(HttpHeaders.ETAG)) {
+            responseContext.getHeaders().putSingle(HttpHeaders.ETAG, entityTag);
+        }
+        Object lastModified = requestContext.getProperty(ConditionalValidator.LAST_MODIFIED_PROPERTY);
+        if (lastModified instanceof Date && !responseContext.getHeaders().containsKey(HttpHeaders.LAST_MODIFIED)) {
+            responseContext.getHeaders().putSingle(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+    }
+}
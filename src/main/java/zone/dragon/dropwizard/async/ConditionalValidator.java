@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.model.Invocable;
+
+/**
+ * Calls the companion method named by a resource method's {@link AsyncValidator} annotation, and evaluates the request's preconditions
+ * against the validator it returns
+ *
+ * @author Bryan Harclerode
+ */
+final class ConditionalValidator {
+
+    /**
+     * Request property holding the {@link EntityTag} to add to the response
+     */
+    static final String ENTITY_TAG_PROPERTY = ConditionalValidator.class.getName() + ".entityTag";
+
+    /**
+     * Request property holding the last-modified {@link Date} to add to the response
+     */
+    static final String LAST_MODIFIED_PROPERTY = ConditionalValidator.class.getName() + ".lastModified";
+
+    private final Method method;
+
+    private final boolean takesArguments;
+
+    private ConditionalValidator(Method method, boolean takesArguments) {
+        this.method = method;
+        this.takesArguments = takesArguments;
+    }
+
+    /**
+     * @return The validator for {@code resourceMethod}, or {@code null} if it doesn't declare one
+     *
+     * @throws IllegalStateException
+     *     If the companion method can't be found
+     */
+    static ConditionalValidator forMethod(Invocable resourceMethod) {
+        Method handlingMethod = resourceMethod.getHandlingMethod();
+        AsyncValidator annotation = handlingMethod.getAnnotation(AsyncValidator.class);
+        if (annotation == null) {
+            return null;
+        }
+        for (Class<?> type = handlingMethod.getDeclaringClass(); type != null; type = type.getSuperclass()) {
+            for (Method candidate : type.getDeclaredMethods()) {
+                if (!candidate.getName().equals(annotation.value())) {
+                    continue;
+                }
+                if (candidate.getParameterCount() == 0) {
+                    candidate.setAccessible(true);
+                    return new ConditionalValidator(candidate, false);
+                }
+                if (Arrays.equals(candidate.getParameterTypes(), handlingMethod.getParameterTypes())) {
+                    candidate.setAccessible(true);
+                    return new ConditionalValidator(candidate, true);
+                }
+            }
+        }
+        throw new IllegalStateException(String.format(
+            "%s names validator %s, but no method of that name takes no parameters or the same parameters",
+            handlingMethod,
+            annotation.value()
+        ));
+    }
+
+    /**
+     * @return Whether conditional requests are evaluated for {@code request}; Only {@code GET} and {@code HEAD} requests are
+     */
+    boolean appliesTo(ContainerRequest request) {
+        return HttpMethod.GET.equals(request.getMethod()) || HttpMethod.HEAD.equals(request.getMethod());
+    }
+
+    /**
+     * Calls the companion method
+     *
+     * @param resource
+     *     Resource instance handling the request
+     * @param args
+     *     Arguments the resource method will be invoked with
+     *
+     * @return The validator, once it has been computed
+     */
+    CompletionStage<?> validate(Object resource, Object[] args) throws Throwable {
+        Object validator;
+        try {
+            validator = takesArguments ? method.invoke(resource, args) : method.invoke(resource);
+        } catch (InvocationTargetException error) {
+            throw error.getCause();
+        }
+        if (validator instanceof CompletionStage) {
+            return (CompletionStage<?>) validator;
+        }
+        return CompletableFuture.completedFuture(validator);
+    }
+
+    /**
+     * Evaluates the request's preconditions against the validator, and records the validator to be added to the full response
+     *
+     * @return The response to resume the request with if its preconditions matched, or {@code null} if the resource method should be
+     * invoked
+     */
+    Response.ResponseBuilder evaluate(ContainerRequest request, Object validator) {
+        if (validator == null) {
+            return null;
+        } else if (validator instanceof EntityTag) {
+            request.setProperty(ENTITY_TAG_PROPERTY, validator);
+            return request.evaluatePreconditions((EntityTag) validator);
+        }
+        Date lastModified;
+        if (validator instanceof Date) {
+            lastModified = (Date) validator;
+        } else if (validator instanceof Instant) {
+            lastModified = Date.from((Instant) validator);
+        } else {
+            throw new IllegalStateException(String.format(
+                "Validator %s returned %s; Expected an EntityTag, Date or Instant",
+                method,
+                validator.getClass().getName()
+            ));
+        }
+        request.setProperty(LAST_MODIFIED_PROPERTY, lastModified);
+        return request.evaluatePreconditions(lastModified);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.Locale;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.model.Invocable;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Classifies requests by the {@link Lane} annotation on the resource method or class, falling back to a request header naming the lane
+ * (if a header name was configured), and finally to {@link AsyncLane#NORMAL}.
+ * <p>
+ * The header is disabled by default, since it allows clients to choose their own priority; Only enable it when the header is set by a
+ * trusted proxy.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+public class DefaultLaneClassifier implements LaneClassifier {
+
+    private final String headerName;
+
+    public DefaultLaneClassifier() {
+        this(null);
+    }
+
+    /**
+     * @param headerName
+     *     Name of the request header carrying the lane name, or {@code null} to only classify by annotation
+     */
+    public DefaultLaneClassifier(String headerName) {
+        this.headerName = headerName;
+    }
+
+    @Override
+    public AsyncLane classify(ContainerRequest request, Invocable resourceMethod) {
+        Lane lane = resourceMethod.getHandlingMethod().getAnnotation(Lane.class);
+        if (lane == null) {
+            lane = resourceMethod.getHandlingMethod().getDeclaringClass().getAnnotation(Lane.class);
+        }
+        if (lane != null) {
+            return lane.value();
+        }
+        if (headerName != null) {
+            String header = request.getHeaderString(headerName);
+            if (header != null) {
+                try {
+                    return AsyncLane.valueOf(header.trim().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    log.debug("Ignoring unknown lane in {} header: {}", headerName, header);
+                }
+            }
+        }
+        return AsyncLane.NORMAL;
+    }
+}
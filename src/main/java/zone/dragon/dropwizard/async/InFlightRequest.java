@@ -0,0 +1,390 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.Response;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import lombok.Getter;
+
+/**
+ * A suspended request that is waiting for the future returned by its resource method to complete.
+ * <p>
+ * This is also the listener that resumes the request once the future completes; It is registered directly with the future (as a
+ * {@link BiConsumer} for {@link CompletionStage}s, or a {@link Runnable} for {@link ListenableFuture}s) so that each dispatch only allocates
+ * this one object, rather than a separate capturing lambda for each step.
+ *
+ * @author Bryan Harclerode
+ */
+public class InFlightRequest implements CompletionCallback, BiConsumer<Object, Throwable>, Runnable, FutureCallback<Object> {
+
+    /**
+     * Observed state of the future a request is waiting on
+     */
+    public enum State {
+        PENDING,
+        COMPLETED,
+        FAILED,
+        CANCELLED,
+        UNKNOWN
+    }
+
+    private final AsyncRequestTracker tracker;
+
+    @Getter
+    private final long id;
+
+    @Getter
+    private final String method;
+
+    @Getter
+    private final URI uri;
+
+    @Getter
+    private final String endpoint;
+
+    @Getter
+    private final long startNanos;
+
+    private final AsyncResponse response;
+
+    private volatile Object continuation;
+
+    private AsyncFlightRecorder recording;
+
+    private BlockingDetector blockingDetector;
+
+    private StreamingResults streaming;
+
+    InFlightRequest(AsyncRequestTracker tracker, long id, String method, URI uri, String endpoint, long startNanos, AsyncResponse response) {
+        this.tracker = tracker;
+        this.id = id;
+        this.method = method;
+        this.uri = uri;
+        this.endpoint = endpoint;
+        this.startNanos = startNanos;
+        this.response = response;
+    }
+
+    /**
+     * Creates a request that isn't registered with any tracker
+     */
+    InFlightRequest(AsyncResponse response) {
+        this(null, 0, null, null, null, System.nanoTime(), response);
+    }
+
+    /**
+     * Records the future this request is suspended on, once the resource method has returned it
+     */
+    void setContinuation(Object continuation) {
+        this.continuation = continuation;
+    }
+
+    /**
+     * Records the stages of this request to Java Flight Recorder
+     */
+    void setRecording(AsyncFlightRecorder recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Reports this request to the detector if it is resumed on a thread that should not be blocked
+     */
+    void setBlockingDetector(BlockingDetector blockingDetector) {
+        this.blockingDetector = blockingDetector;
+    }
+
+    /**
+     * Writes the result incrementally, when the resource method produces a {@link java.util.stream.Stream Stream} or
+     * {@link java.util.Iterator Iterator}
+     */
+    void setStreaming(StreamingResults streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Records that the resource method is about to be invoked
+     */
+    void invoking() {
+        if (recording != null) {
+            recording.invoking();
+        }
+    }
+
+    /**
+     * Resumes the request once {@code continuation} completes
+     *
+     * @param continuation
+     *     Value returned by the resource method
+     * @param executor
+     *     Executor that resumes the response; The completing thread is used when this is {@link MoreExecutors#directExecutor()}
+     */
+    void resumeOnCompletion(Object continuation, Executor executor) {
+        this.continuation = continuation;
+        if (recording != null) {
+            recording.invoked();
+        }
+        if (blockingDetector == null) {
+            registerWith(continuation, executor);
+            return;
+        }
+        boolean expected = blockingDetector.expectResumes(true);
+        try {
+            registerWith(continuation, executor);
+        } finally {
+            blockingDetector.expectResumes(expected);
+        }
+    }
+
+    private void registerWith(Object continuation, Executor executor) {
+        boolean direct = executor == MoreExecutors.directExecutor();
+        if (continuation instanceof LongPollHub.Waiter) {
+            // Resumed by the hub directly, which also applies the waiter's timeout and unlinks it if the response completes first
+            ((LongPollHub.Waiter<?, ?>) continuation).attach(this, response, executor);
+        } else if (continuation instanceof CompletableFuture && direct) {
+            CompletableFuture<?> future = (CompletableFuture<?>) continuation;
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                // Already completed successfully; resume right away without registering anything with the future
+                onSuccess(future.getNow(null));
+            } else {
+                future.whenComplete(this);
+            }
+        } else if (continuation instanceof CompletionStage) {
+            if (direct) {
+                ((CompletionStage<?>) continuation).whenComplete(this);
+            } else {
+                ((CompletionStage<?>) continuation).whenCompleteAsync(this, executor);
+            }
+        } else if (continuation instanceof ListenableFuture) {
+            ((ListenableFuture<?>) continuation).addListener(this, executor);
+        } else if (continuation instanceof jersey.repackaged.com.google.common.util.concurrent.ListenableFuture) {
+            ((jersey.repackaged.com.google.common.util.concurrent.ListenableFuture<?>) continuation).addListener(this, executor);
+        } else {
+            onSuccess(continuation);
+        }
+    }
+
+    /**
+     * Completion of a {@link CompletionStage}
+     */
+    @Override
+    public void accept(Object result, Throwable error) {
+        if (error != null) {
+            onFailure(error);
+        } else {
+            onSuccess(result);
+        }
+    }
+
+    /**
+     * Completion handed over by a component that resumes requests by design, such as a {@link LongPollHub} publish; The current thread is
+     * expected to resume the request, so it isn't reported to the blocking detector
+     */
+    void handOff(Object result, Throwable error) {
+        if (blockingDetector == null) {
+            accept(result, error);
+            return;
+        }
+        boolean expected = blockingDetector.expectResumes(true);
+        try {
+            accept(result, error);
+        } finally {
+            blockingDetector.expectResumes(expected);
+        }
+    }
+
+    /**
+     * Completion of a {@link ListenableFuture}
+     */
+    @Override
+    public void run() {
+        Future<?> future = (Future<?>) continuation;
+        if (future.isCancelled()) {
+            response.cancel();
+            return;
+        }
+        Object result;
+        try {
+            result = Uninterruptibles.getUninterruptibly(future);
+        } catch (Throwable error) {
+            onFailure(error);
+            return;
+        }
+        onSuccess(result);
+    }
+
+    @Override
+    public void onSuccess(Object result) {
+        if (blockingDetector != null) {
+            blockingDetector.checkResume(endpoint);
+        }
+        if (recording == null) {
+            resume(result);
+            return;
+        }
+        recording.completed(null);
+        recording.resuming();
+        resume(result);
+        recording.resumed();
+    }
+
+    /**
+     * Resumes with a response produced before the resource method was invoked, such as a validator's {@code 304 Not Modified}; Like a
+     * failure at that point, it's handled on whichever thread produced it by design, so it isn't reported to the blocking detector
+     */
+    void resumeEarly(Response result) {
+        if (recording == null) {
+            response.resume(result);
+            return;
+        }
+        recording.resuming();
+        response.resume(result);
+        recording.resumed();
+    }
+
+    private void resume(Object result) {
+        if (streaming == null || result == null) {
+            response.resume(result);
+            return;
+        }
+        StreamingResults.Output output = streaming.output(result);
+        response.register(output);
+        if (!response.resume(output)) {
+            // Already cancelled or timed out, so the output will never be written
+            output.close();
+        }
+    }
+
+    @Override
+    public void onFailure(Throwable error) {
+        Throwable cause = AsyncInvoker.unwrap(error);
+        if (blockingDetector != null && continuation != null) {
+            // Before the resource method returns, a failure (e.g. a filter aborting) is handled on the dispatching thread by design
+            blockingDetector.checkResume(endpoint);
+        }
+        if (recording == null) {
+            fail(cause);
+            return;
+        }
+        if (continuation == null) {
+            // Failed before the resource method returned a future, e.g. in a filter or validator
+            recording.failed(cause);
+        } else {
+            recording.completed(cause);
+        }
+        recording.resuming();
+        fail(cause);
+        recording.resumed();
+    }
+
+    /**
+     * Records that the resource method threw instead of returning a future; Jersey then maps the exception as usual
+     */
+    void invokeFailed(Throwable error) {
+        AsyncFlightRecorder recording = this.recording;
+        if (recording != null) {
+            // The exception may still reach onFailure if it's rethrown from a later dispatch step, which shouldn't record it twice
+            this.recording = null;
+            recording.failed(AsyncInvoker.unwrap(error));
+        }
+    }
+
+    private void fail(Throwable cause) {
+        if (cause instanceof CancellationException) {
+            // Same 503 Service Unavailable as a cancelled ListenableFuture, without searching the exception mappers for the cancellation
+            response.cancel();
+        } else {
+            response.resume(cause);
+        }
+    }
+
+    public long getAge(TimeUnit unit) {
+        return unit.convert(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public State getState() {
+        Object continuation = this.continuation;
+        if (continuation == null) {
+            return State.PENDING;
+        } else if (continuation instanceof CompletableFuture) {
+            CompletableFuture<?> future = (CompletableFuture<?>) continuation;
+            if (future.isCancelled()) {
+                return State.CANCELLED;
+            } else if (future.isCompletedExceptionally()) {
+                return State.FAILED;
+            }
+            return future.isDone() ? State.COMPLETED : State.PENDING;
+        } else if (continuation instanceof Future) {
+            Future<?> future = (Future<?>) continuation;
+            if (future.isCancelled()) {
+                return State.CANCELLED;
+            }
+            return future.isDone() ? State.COMPLETED : State.PENDING;
+        }
+        return State.UNKNOWN;
+    }
+
+    /**
+     * Cancels the request, resuming it with {@code 503 Service Unavailable} and cancelling the future it is waiting on
+     *
+     * @return {@code true} if the request was still suspended and has been cancelled
+     */
+    public boolean cancel() {
+        boolean cancelled = response.cancel();
+        Object continuation = this.continuation;
+        if (continuation instanceof Future) {
+            ((Future<?>) continuation).cancel(false);
+        }
+        close();
+        return cancelled;
+    }
+
+    /**
+     * Stops tracking this request
+     */
+    public void close() {
+        if (tracker != null) {
+            tracker.remove(this);
+        }
+    }
+
+    @Override
+    public void onComplete(Throwable throwable) {
+        close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%s) age=%dms state=%s", method, uri, endpoint, getAge(TimeUnit.MILLISECONDS), getState());
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.container.TimeoutHandler;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Parks long-poll requests by key until a value is published for that key. Resource methods return the {@link Waiter} handed out by
+ * {@link #await(Object)}; A {@link #publish(Object, Object) publish} then resumes every request waiting on the key in one batch.
+ * <p>
+ * Waiters are kept in intrusive linked lists (the waiter is its own list node), spread across lock stripes by key hash so that
+ * registering, publishing and timing out on different keys rarely contend. A publish detaches a key's whole list under its stripe lock and
+ * completes the waiters outside of it. When a waiter is returned from a resource method, the hub applies its timeout to the suspended
+ * response, resumes the request directly instead of through a dependent stage, and unlinks the waiter when the response completes for any
+ * other reason (timeout, cancellation, or writing the response failing), so abandoned watchers don't accumulate.
+ * <p>
+ * Jersey only notices a client disconnect when it writes the response, so the waiter of an idle client that has gone away stays linked
+ * until its key is published or its wait times out; Use a timeout for keys that may never be published again.
+ *
+ * @param <K>
+ *     Type of the keys that requests wait on
+ * @param <V>
+ *     Type of the values published to them
+ *
+ * @author Bryan Harclerode
+ */
+public class LongPollHub<K, V> implements Managed {
+
+    /**
+     * Handle for a single request waiting on a key; Return it from a resource method to suspend the request until the key is published
+     * or the wait times out.
+     *
+     * @param <K>
+     *     Type of the key being waited on
+     * @param <V>
+     *     Type of the value the request is resumed with
+     */
+    public static final class Waiter<K, V> extends CompletableFuture<V> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Waiter> DELIVERED = AtomicIntegerFieldUpdater.newUpdater(Waiter.class, "delivered");
+
+        private final LongPollHub<K, V> hub;
+
+        @Getter
+        private final K key;
+
+        private final long timeoutNanos;
+
+        /**
+         * Neighbors in the key's wait list; Guarded by the key's stripe
+         */
+        private Waiter<K, V> prev;
+
+        private Waiter<K, V> next;
+
+        private boolean linked;
+
+        private volatile Attachment attachment;
+
+        private volatile int delivered;
+
+        Waiter(LongPollHub<K, V> hub, K key, long timeoutNanos) {
+            this.hub = hub;
+            this.key = key;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        /**
+         * Resumes {@code request} when this waiter completes, without registering a dependent stage
+         */
+        void attach(InFlightRequest request, AsyncResponse response, Executor executor) {
+            Attachment attachment = new Attachment(request, executor);
+            if (timeoutNanos > 0) {
+                response.setTimeoutHandler(attachment);
+                response.setTimeout(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            response.register(attachment);
+            this.attachment = attachment;
+            if (isDone()) {
+                deliver();
+            }
+        }
+
+        /**
+         * Completes this waiter and resumes its request, if one is attached
+         */
+        void wake(V value) {
+            complete(value);
+            deliver();
+        }
+
+        private void deliver() {
+            Attachment attachment = this.attachment;
+            if (attachment != null && isDone() && DELIVERED.compareAndSet(this, 0, 1)) {
+                if (attachment.executor == MoreExecutors.directExecutor()) {
+                    attachment.run();
+                } else {
+                    attachment.executor.execute(attachment);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            hub.unlink(this);
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            deliver();
+            return cancelled;
+        }
+
+        /**
+         * Callbacks of the response the waiter was returned for; Only created once it's attached, so they can't be invoked on a waiter
+         * that has no request to resume
+         */
+        private final class Attachment implements Runnable, TimeoutHandler, CompletionCallback, ConnectionCallback {
+
+            private final InFlightRequest request;
+
+            private final Executor executor;
+
+            Attachment(InFlightRequest request, Executor executor) {
+                this.request = request;
+                this.executor = executor;
+            }
+
+            /**
+             * Resumes the attached request with the outcome of the waiter
+             */
+            @Override
+            public void run() {
+                V value;
+                try {
+                    value = join();
+                } catch (CompletionException error) {
+                    request.handOff(null, error.getCause());
+                    return;
+                } catch (Throwable error) {
+                    request.handOff(null, error);
+                    return;
+                }
+                request.handOff(value, null);
+            }
+
+            @Override
+            public void handleTimeout(AsyncResponse asyncResponse) {
+                hub.timeouts.increment();
+                hub.unlink(Waiter.this);
+                wake(hub.timeoutValue);
+            }
+
+            @Override
+            public void onComplete(Throwable throwable) {
+                hub.unlink(Waiter.this);
+            }
+
+            @Override
+            public void onDisconnect(AsyncResponse disconnected) {
+                hub.unlink(Waiter.this);
+            }
+        }
+    }
+
+    /**
+     * Heads of the wait lists for the keys that hash to this stripe; Also the lock guarding those lists
+     */
+    private static final class Stripe<K, V> {
+
+        private final Map<K, Waiter<K, V>> heads = new HashMap<>();
+    }
+
+    private final Stripe<K, V>[] stripes;
+
+    private final int stripeMask;
+
+    private final long defaultTimeoutNanos;
+
+    private final V timeoutValue;
+
+    private final LongAdder waiting = new LongAdder();
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Creates a hub whose waits never time out; Waiters of clients that disconnect while idle stay linked until their key is published
+     */
+    public LongPollHub() {
+        this(0, TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * @param defaultTimeout
+     *     How long {@link #await(Object)} waits before resuming with {@code timeoutValue}, or {@code 0} to wait indefinitely
+     * @param unit
+     *     Unit of {@code defaultTimeout}
+     * @param timeoutValue
+     *     Value requests are resumed with when they time out; {@code null} results in {@code 204 No Content}
+     */
+    public LongPollHub(long defaultTimeout, @NonNull TimeUnit unit, V timeoutValue) {
+        this(defaultTimeout, unit, timeoutValue, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param defaultTimeout
+     *     How long {@link #await(Object)} waits before resuming with {@code timeoutValue}, or {@code 0} to wait indefinitely
+     * @param unit
+     *     Unit of {@code defaultTimeout}
+     * @param timeoutValue
+     *     Value requests are resumed with when they time out; {@code null} results in {@code 204 No Content}
+     * @param concurrency
+     *     Minimum number of lock stripes; Rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public LongPollHub(long defaultTimeout, @NonNull TimeUnit unit, V timeoutValue, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        int size = Integer.highestOneBit(concurrency - 1) << 1;
+        this.stripes = new Stripe[Math.max(size, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.stripeMask = stripes.length - 1;
+        this.defaultTimeoutNanos = unit.toNanos(defaultTimeout);
+        this.timeoutValue = timeoutValue;
+    }
+
+    /**
+     * Waits for the next value published to {@code key}, using the hub's default timeout
+     */
+    public Waiter<K, V> await(@NonNull K key) {
+        return await(key, defaultTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits for the next value published to {@code key}
+     *
+     * @param key
+     *     Key to wait on
+     * @param timeout
+     *     How long to wait before resuming with the hub's timeout value, or {@code 0} to wait indefinitely; Only applied when the waiter
+     *     is returned from a resource method
+     * @param unit
+     *     Unit of {@code timeout}
+     */
+    public Waiter<K, V> await(@NonNull K key, long timeout, @NonNull TimeUnit unit) {
+        Waiter<K, V> waiter = new Waiter<>(this, key, unit.toNanos(timeout));
+        Stripe<K, V> stripe = stripeFor(key);
+        synchronized (stripe) {
+            Waiter<K, V> head = stripe.heads.put(key, waiter);
+            if (head != null) {
+                waiter.next = head;
+                head.prev = waiter;
+            }
+            waiter.linked = true;
+        }
+        waiting.increment();
+        return waiter;
+    }
+
+    /**
+     * Resumes every request waiting on {@code key} with {@code value}
+     *
+     * @return The number of waiters that were woken
+     */
+    public int publish(@NonNull K key, V value) {
+        Stripe<K, V> stripe = stripeFor(key);
+        Waiter<K, V> head;
+        int count = 0;
+        synchronized (stripe) {
+            head = stripe.heads.remove(key);
+            for (Waiter<K, V> waiter = head; waiter != null; waiter = waiter.next) {
+                waiter.linked = false;
+                count++;
+            }
+        }
+        waiting.add(-count);
+        published.add(count);
+        // The detached list is no longer reachable from the stripe, so it can be walked without the lock
+        Waiter<K, V> waiter = head;
+        while (waiter != null) {
+            Waiter<K, V> next = waiter.next;
+            waiter.prev = null;
+            waiter.next = null;
+            waiter.wake(value);
+            waiter = next;
+        }
+        return count;
+    }
+
+    /**
+     * Resumes every request waiting on any key with {@code value}
+     *
+     * @return The number of waiters that were woken
+     */
+    public int publishAll(V value) {
+        int count = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            List<K> keys;
+            synchronized (stripe) {
+                keys = new ArrayList<>(stripe.heads.keySet());
+            }
+            for (K key : keys) {
+                count += publish(key, value);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of waiters currently parked on any key
+     */
+    public long getWaiting() {
+        return waiting.sum();
+    }
+
+    /**
+     * @return The number of waiters woken by a publish since the hub was created
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return The number of waiters that timed out since the hub was created
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    private void unlink(Waiter<K, V> waiter) {
+        Stripe<K, V> stripe = stripeFor(waiter.key);
+        synchronized (stripe) {
+            if (!waiter.linked) {
+                return;
+            }
+            if (waiter.prev == null) {
+                if (waiter.next == null) {
+                    stripe.heads.remove(waiter.key);
+                } else {
+                    stripe.heads.put(waiter.key, waiter.next);
+                }
+            } else {
+                waiter.prev.next = waiter.next;
+            }
+            if (waiter.next != null) {
+                waiter.next.prev = waiter.prev;
+            }
+            waiter.prev = null;
+            waiter.next = null;
+            waiter.linked = false;
+        }
+        waiting.decrement();
+    }
+
+    private Stripe<K, V> stripeFor(K key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+
+    @Override
+    public void start() { }
+
+    /**
+     * Resumes every remaining waiter with the timeout value so that suspended requests don't hold up shutdown
+     */
+    @Override
+    public void stop() {
+        publishAll(timeoutValue);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.model.Invocable;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resumes asynchronous requests on a dedicated pool of threads, favoring requests in higher {@link AsyncLane lanes}.
+ * <p>
+ * Each worker serves the lanes in weighted round-robin order: it takes up to {@link AsyncLane#getWeight()} queued resumptions from a lane
+ * before moving on to the next one. When every lane is backed up, higher lanes get proportionally more of the pool, while lower lanes are
+ * still guaranteed their share so they are never starved.
+ * <p>
+ * For each lane, the number of queued resumptions is reported as the {@code queued} gauge, and the time spent waiting in the queue as the
+ * {@code wait} timer; A scheduler replaces the metrics of any earlier scheduler created with the same registry.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+public class PriorityResumeScheduler implements Managed {
+
+    private static final AsyncLane[] LANES = AsyncLane.values();
+
+    /**
+     * How often idle workers check whether the scheduler has been stopped
+     */
+    private static final long IDLE_CHECK_MILLIS = 100;
+
+    private final int threadCount;
+
+    private final LaneClassifier classifier;
+
+    private final LaneQueue[] queues = new LaneQueue[LANES.length];
+
+    /**
+     * One permit for each queued resumption, across all lanes
+     */
+    private final Semaphore pending = new Semaphore(0);
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public PriorityResumeScheduler(int threadCount, @NonNull LaneClassifier classifier, @NonNull MetricRegistry metrics) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one resume thread is required");
+        }
+        this.threadCount = threadCount;
+        this.classifier = classifier;
+        for (AsyncLane lane : LANES) {
+            queues[lane.ordinal()] = new LaneQueue(lane, metrics);
+        }
+    }
+
+    /**
+     * Determines the lane a request should be resumed on
+     */
+    public AsyncLane classify(ContainerRequest request, Invocable resourceMethod) {
+        AsyncLane lane = classifier.classify(request, resourceMethod);
+        return lane == null ? AsyncLane.NORMAL : lane;
+    }
+
+    /**
+     * @return An executor that queues tasks on the given lane
+     */
+    public Executor executorFor(@NonNull AsyncLane lane) {
+        return queues[lane.ordinal()];
+    }
+
+    /**
+     * @return The number of resumptions currently queued on the given lane
+     */
+    public int getQueued(@NonNull AsyncLane lane) {
+        return queues[lane.ordinal()].size.get();
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(this::work, "async-resume-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Stops the workers once they finish the resumption they are running, without interrupting it, and then resumes anything still queued
+     * on the calling thread
+     */
+    @Override
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        workers.clear();
+        drain();
+    }
+
+    /**
+     * Runs every queued resumption on the calling thread; Anything still queued once the workers have stopped belongs to a request that
+     * would otherwise never complete
+     */
+    private void drain() {
+        int[] cursor = {0, LANES[0].getWeight()};
+        while (pending.tryAcquire()) {
+            poll(cursor).run();
+        }
+    }
+
+    private void work() {
+        // lane index and the number of tasks that may still be taken from it in the current round
+        int[] cursor = {0, LANES[0].getWeight()};
+        while (running) {
+            boolean acquired;
+            try {
+                acquired = pending.tryAcquire(IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (acquired) {
+                poll(cursor).run();
+            }
+        }
+    }
+
+    /**
+     * Takes the next task in weighted round-robin order; Must only be called after acquiring a permit from {@link #pending}, which
+     * guarantees that a task is queued in some lane.
+     */
+    private QueuedTask poll(int[] cursor) {
+        while (true) {
+            if (cursor[1] > 0) {
+                QueuedTask task = queues[cursor[0]].poll();
+                if (task != null) {
+                    cursor[1]--;
+                    return task;
+                }
+            }
+            cursor[0] = (cursor[0] + 1) % LANES.length;
+            cursor[1] = LANES[cursor[0]].getWeight();
+        }
+    }
+
+    private class LaneQueue implements Executor {
+
+        private final Queue<QueuedTask> tasks = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final Timer waitTimer;
+
+        LaneQueue(AsyncLane lane, MetricRegistry metrics) {
+            String laneName = lane.name().toLowerCase(Locale.ROOT);
+            String queuedName = MetricRegistry.name(PriorityResumeScheduler.class, laneName, "queued");
+            String waitName = MetricRegistry.name(PriorityResumeScheduler.class, laneName, "wait");
+            // Replaces the metrics of an earlier scheduler on the same registry, e.g. one left over from a previous application run
+            metrics.remove(queuedName);
+            metrics.remove(waitName);
+            metrics.register(queuedName, (Gauge<Integer>) size::get);
+            waitTimer = metrics.register(waitName, new Timer());
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (!running) {
+                // Not started (or already stopped); there's nobody to hand off to, so resume on the calling thread
+                command.run();
+                return;
+            }
+            size.incrementAndGet();
+            tasks.offer(new QueuedTask(this, command, System.nanoTime()));
+            pending.release();
+            if (!running) {
+                // Stopped while queueing; stop() may already have drained the queues, so make sure this task isn't stranded
+                drain();
+            }
+        }
+
+        QueuedTask poll() {
+            QueuedTask task = tasks.poll();
+            if (task != null) {
+                size.decrementAndGet();
+            }
+            return task;
+        }
+    }
+
+    private static class QueuedTask implements Runnable {
+
+        private final LaneQueue lane;
+
+        private final Runnable command;
+
+        private final long enqueuedNanos;
+
+        QueuedTask(LaneQueue lane, Runnable command, long enqueuedNanos) {
+            this.lane = lane;
+            this.command = command;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public void run() {
+            lane.waitTimer.update(System.nanoTime() - enqueuedNanos, TimeUnit.NANOSECONDS);
+            try {
+                command.run();
+            } catch (Throwable t) {
+                log.error("Failed to resume async request", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.BaseStream;
+
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes {@link BaseStream Stream} and {@link Iterator} results of asynchronous resource methods as a JSON array, one element at a time,
+ * so that the whole result never has to be held in memory.
+ * <p>
+ * Elements are serialized straight into the response through Jackson's fixed-size generator buffer; Once Jersey's content-length buffer
+ * fills up the response switches to chunked encoding, so the memory used by each request stays constant regardless of the number of
+ * elements. The stream is closed once it has been written, or as soon as the response fails, the client disconnects, or the request is
+ * cancelled. If producing an element fails, the array is left unterminated.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+class StreamingResults {
+
+    private final ObjectWriter writer;
+
+    /**
+     * @param objectMapper
+     *     Mapper used to serialize each element
+     */
+    StreamingResults(@NonNull ObjectMapper objectMapper) {
+        // Flushing after every element would send a chunk per element; Let the buffers decide when to write instead
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * @return {@code true} if results of the given type are streamed
+     */
+    static boolean isStreamingType(Type type) {
+        return Types.isSubtypeOf(type, BaseStream.class) || Types.isSubtypeOf(type, Iterator.class);
+    }
+
+    /**
+     * @param result
+     *     {@link BaseStream} or {@link Iterator} returned by the resource method
+     *
+     * @return Output that writes the elements of {@code result}, and closes it when written
+     */
+    Output output(@NonNull Object result) {
+        if (result instanceof BaseStream) {
+            BaseStream<?, ?> stream = (BaseStream<?, ?>) result;
+            return new Output(stream.iterator(), stream);
+        } else if (result instanceof Iterator) {
+            Iterator<?> iterator = (Iterator<?>) result;
+            return new Output(iterator, iterator instanceof AutoCloseable ? (AutoCloseable) iterator : null);
+        }
+        throw new IllegalArgumentException("Can't stream " + result.getClass().getName());
+    }
+
+    /**
+     * Response entity that writes the elements of a single result
+     */
+    final class Output implements StreamingOutput, CompletionCallback {
+
+        private final Iterator<?> elements;
+
+        private final AutoCloseable source;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Output(Iterator<?> elements, AutoCloseable source) {
+            this.elements = elements;
+            this.source = source;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            try (JsonGenerator generator = writer.getFactory().createGenerator(output)) {
+                // Jersey owns the response stream, and closes it once the entity has been written
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // A failure part way through must leave the array unterminated, so the client can't mistake it for the whole result
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+                generator.writeStartArray();
+                while (elements.hasNext()) {
+                    writer.writeValue(generator, elements.next());
+                }
+                generator.writeEndArray();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Closes the result if the response completes without it having been written, such as when the request is cancelled
+         */
+        @Override
+        public void onComplete(Throwable throwable) {
+            close();
+        }
+
+        void close() {
+            if (source == null || !closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                source.close();
+            } catch (Exception e) {
+                log.warn("Failed to close streamed result", e);
+            }
+        }
+    }
+}
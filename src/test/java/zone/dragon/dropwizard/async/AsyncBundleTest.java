@@ -1,18 +1,24 @@
 package zone.dragon.dropwizard.async;
 
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Result;
 import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
@@ -35,6 +41,7 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Slf4j
 @ExtendWith(DropwizardExtensionsSupport.class)
@@ -69,6 +76,7 @@ public class AsyncBundleTest {
         public void run(SimpleConfig configuration, Environment environment) {
             environment.jersey().register(AsyncFeature.class);
             environment.jersey().register(TestResource.class);
+            environment.jersey().register(new IllegalArgumentMapper());
             environment.jersey().register(new AbstractBinder() {
                 @Override
                 protected void configure() {
@@ -80,16 +88,38 @@ public class AsyncBundleTest {
     }
 
 
+    public static class IllegalArgumentMapper implements ExceptionMapper<IllegalArgumentException> {
+
+        @Override
+        public Response toResponse(IllegalArgumentException exception) {
+            return Response.status(422).build();
+        }
+    }
+
     @Path("test")
     @Slf4j
     public static class TestResource {
 
+        /**
+         * Tasks forked by {@link #getScope(AsyncScope)} that never complete on their own
+         */
+        static final Queue<CompletableFuture<String>> ABANDONED = new ConcurrentLinkedQueue<>();
+
         @Inject
         CompletableFuture<Void> responseTrigger;
 
         @Inject
         AtomicInteger activeRequests;
 
+        @Path("scope")
+        @GET
+        public CompletionStage<String> getScope(@Context AsyncScope scope) {
+            CompletableFuture<String> abandoned = new CompletableFuture<>();
+            ABANDONED.add(abandoned);
+            scope.fork(() -> abandoned);
+            return scope.fork(() -> CompletableFuture.completedFuture(scope.getClass().getSimpleName()));
+        }
+
         @Path("completionStage")
         @GET
         public CompletionStage<Response> getCompletionStage() {
@@ -101,6 +131,15 @@ public class AsyncBundleTest {
             return responseTrigger.thenApply(ignored -> Response.status(234).build());
         }
 
+        @Path("failedStage")
+        @GET
+        public CompletionStage<Response> getFailedStage() {
+            CompletableFuture<String> downstream = new CompletableFuture<>();
+            downstream.completeExceptionally(new IllegalArgumentException("invalid"));
+            // The dependent stage fails with a CompletionException wrapping the downstream failure
+            return downstream.thenApply(value -> Response.ok(value).build());
+        }
+
         @Path("listenableFuture")
         @GET
         public ListenableFuture<Response> getListenableFuture() {
@@ -177,6 +216,24 @@ public class AsyncBundleTest {
         testEndpoint("completionStage");
     }
 
+    @Test
+    public void testScopeCancelsTasksWhenResponseCompletes() throws InterruptedException, ExecutionException, TimeoutException {
+        ContentResponse response = client.GET("http://localhost:" + dropwizard.getLocalPort() + "/test/scope");
+        assertThat(response.getContentAsString()).isEqualTo(AsyncScope.class.getSimpleName());
+        CompletableFuture<String> abandoned = TestResource.ABANDONED.poll();
+        assertThat(abandoned).isNotNull();
+        // The scope is closed by the response's completion callback, which may run just after the client has read the response
+        assertThatThrownBy(() -> abandoned.get(10, TimeUnit.SECONDS)).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    public void testFailedStageIsMappedByCause() throws InterruptedException, ExecutionException, TimeoutException {
+        for (int i = 0; i < 2; i++) {
+            ContentResponse response = client.GET("http://localhost:" + dropwizard.getLocalPort() + "/test/failedStage");
+            assertThat(response.getStatus()).isEqualTo(422);
+        }
+    }
+
     @Test
     public void testListenableFuture() throws InterruptedException, ExecutionException, TimeoutException {
         testEndpoint("listenableFuture");
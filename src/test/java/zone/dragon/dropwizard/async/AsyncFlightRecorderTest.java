@@ -0,0 +1,226 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncFlightRecorder")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class AsyncFlightRecorderTest {
+
+    private static final String PREFIX = "zone.dragon.dropwizard.async.";
+
+    public static class RecordedApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle());
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(RecordedResource.class);
+        }
+    }
+
+    @Path("recorded")
+    public static class RecordedResource {
+
+        @GET
+        @Path("succeeding")
+        public CompletionStage<String> succeeding() {
+            return CompletableFuture.supplyAsync(() -> "ok");
+        }
+
+        @GET
+        @Path("failing")
+        public CompletionStage<String> failing() {
+            return CompletableFuture.supplyAsync(() -> {
+                throw new IllegalStateException("failed");
+            });
+        }
+
+        @GET
+        @Path("throwing")
+        public CompletionStage<String> throwing() {
+            throw new IllegalArgumentException("thrown");
+        }
+
+        @GET
+        @Path("validated")
+        @AsyncValidator("version")
+        public CompletionStage<String> validated() {
+            return CompletableFuture.completedFuture("validated");
+        }
+
+        CompletionStage<EntityTag> version() {
+            return CompletableFuture.supplyAsync(() -> new EntityTag("v1"));
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        RecordedApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + dropwizard.getLocalPort() + "/recorded/" + path;
+    }
+
+    private static Predicate<RecordedEvent> event(String name, String method) {
+        return event -> event.getEventType().getName().equals(PREFIX + name)
+            && event.getString("resourceMethod").equals("RecordedResource#" + method);
+    }
+
+    /**
+     * Dumps the recording until it contains every expected event; The resume events are committed after the response has been written,
+     * so they may land just after the client has read it
+     */
+    private static List<RecordedEvent> awaitEvents(
+        Recording recording, java.nio.file.Path dump, List<Predicate<RecordedEvent>> expected
+    ) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (true) {
+            recording.dump(dump);
+            List<RecordedEvent> events = RecordingFile
+                .readAllEvents(dump)
+                .stream()
+                .filter(event -> event.getEventType().getName().startsWith(PREFIX))
+                .collect(Collectors.toList());
+            if (expected.stream().allMatch(matcher -> events.stream().anyMatch(matcher)) || System.nanoTime() > deadline) {
+                return events;
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    @DisplayName("records dispatch, suspension, resumption and failure events for each endpoint")
+    void recordsStages() throws Exception {
+        java.nio.file.Path dump = Files.createTempFile("async-flight-recorder", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"Dispatch", "Suspended", "Resume", "Failure"}) {
+                recording.enable(PREFIX + name);
+            }
+            recording.start();
+            assertThat(client.GET(url("succeeding")).getStatus()).isEqualTo(200);
+            assertThat(client.GET(url("failing")).getStatus()).isEqualTo(500);
+            assertThat(client.GET(url("throwing")).getStatus()).isEqualTo(500);
+
+            List<RecordedEvent> events = awaitEvents(recording, dump, Arrays.asList(
+                event("Resume", "succeeding"),
+                event("Resume", "failing"),
+                event("Failure", "throwing")
+            ));
+
+            assertThat(events).filteredOn(event("Dispatch", "succeeding")).hasSize(1);
+            assertThat(events).filteredOn(event("Suspended", "succeeding")).hasSize(1).allMatch(event -> !event.getBoolean("failed"));
+            assertThat(events).filteredOn(event("Resume", "succeeding")).hasSize(1);
+            assertThat(events).filteredOn(event("Failure", "succeeding")).isEmpty();
+
+            assertThat(events).filteredOn(event("Dispatch", "failing")).hasSize(1);
+            assertThat(events).filteredOn(event("Suspended", "failing")).hasSize(1).allMatch(event -> event.getBoolean("failed"));
+            assertThat(events).filteredOn(event("Resume", "failing")).hasSize(1);
+            assertThat(events)
+                .filteredOn(event("Failure", "failing"))
+                .extracting(event -> event.getClass("exceptionClass").getName())
+                .containsExactly(IllegalStateException.class.getName());
+
+            // Thrown before a future was returned, so the request was never suspended
+            assertThat(events).filteredOn(event("Dispatch", "throwing")).hasSize(1);
+            assertThat(events).filteredOn(event("Suspended", "throwing")).isEmpty();
+            assertThat(events)
+                .filteredOn(event("Failure", "throwing"))
+                .extracting(event -> event.getClass("exceptionClass").getName())
+                .containsExactly(IllegalArgumentException.class.getName());
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    @DisplayName("records only the resumption of requests answered before the resource method is invoked")
+    void recordsPreconditions() throws Exception {
+        java.nio.file.Path dump = Files.createTempFile("async-flight-recorder", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"Dispatch", "Suspended", "Resume", "Failure"}) {
+                recording.enable(PREFIX + name);
+            }
+            recording.start();
+            assertThat(client.newRequest(url("validated")).header(HttpHeaders.IF_NONE_MATCH, "\"v1\"").send().getStatus()).isEqualTo(304);
+            assertThat(client.GET(url("succeeding")).getStatus()).isEqualTo(200);
+
+            List<RecordedEvent> events = awaitEvents(recording, dump, Arrays.asList(
+                event("Resume", "validated"),
+                event("Resume", "succeeding")
+            ));
+
+            assertThat(events).filteredOn(event("Resume", "validated")).hasSize(1);
+            assertThat(events).filteredOn(event("Dispatch", "validated")).isEmpty();
+            assertThat(events).filteredOn(event("Suspended", "validated")).isEmpty();
+            assertThat(events).filteredOn(event("Failure", "validated")).isEmpty();
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import io.dropwizard.Application;
+import io.dropwizard.Configuration;
+import io.dropwizard.jetty.HttpConnectorFactory;
+import io.dropwizard.server.SimpleServerFactory;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.DropwizardTestSupport;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import lombok.extern.slf4j.Slf4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Scalability harness for suspended requests. Drives an embedded application using {@link AsyncBundle} with an asynchronous load generator
+ * against a fake downstream with configurable latency, and writes throughput, latency percentiles, Jetty thread counts, heap retained per
+ * suspended request (with and without {@link AsyncBundle#withLowFootprint() low-footprint mode}), CPU time per request while the downstream
+ * is healthy and while every call to it fails, and GC pauses to a JSON file. The failing phase runs three times: with failures wrapped so
+ * they reach Dropwizard's logging catch-all mapper, as they did before the invoker unwrapped them; unwrapped; And unwrapped with
+ * {@link AsyncBundle#withCachedExceptionMappers() cached exception mappers}, reporting the CPU time each step saves per failed request.
+ * <p>
+ * Skipped unless {@code async.loadtest=true}; Run with e.g.
+ * {@code mvn test -Dtest=AsyncLoadTest -Dasync.loadtest=true -Dasync.loadtest.concurrency=50000}. Large concurrency levels need a raised
+ * file descriptor limit, and are bounded by the number of ephemeral ports available to the loopback interface.
+ *
+ * @author Bryan Harclerode
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "async.loadtest", matches = "true")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class AsyncLoadTest {
+
+    /**
+     * Number of requests kept suspended at once
+     */
+    public static final int CONCURRENCY = Integer.getInteger("async.loadtest.concurrency", 10_000);
+
+    /**
+     * Latency of each call to the fake downstream
+     */
+    public static final long LATENCY_MS = Long.getLong("async.loadtest.latencyMs", 250);
+
+    /**
+     * How long the sustained-load phase runs
+     */
+    public static final long DURATION_SECONDS = Long.getLong("async.loadtest.durationSeconds", 30);
+
+    /**
+     * Number of Jetty request threads; Kept far below {@link #CONCURRENCY} so that suspending is the only way to keep up
+     */
+    public static final int MAX_THREADS = Integer.getInteger("async.loadtest.maxThreads", 32);
+
+    /**
+     * Size of the entity posted with each suspended request
+     */
+    public static final int ENTITY_BYTES = Integer.getInteger("async.loadtest.entityBytes", 2048);
+
+    public static final String OUTPUT = System.getProperty("async.loadtest.output", "target/async-loadtest.json");
+
+    public static class LoadConfig extends Configuration {
+        public LoadConfig() {
+            SimpleServerFactory serverFactory = new SimpleServerFactory();
+            HttpConnectorFactory connectorFactory = new HttpConnectorFactory();
+            connectorFactory.setPort(0);
+            connectorFactory.setAcceptQueueSize(CONCURRENCY);
+            serverFactory.setConnector(connectorFactory);
+            serverFactory.setApplicationContextPath("/");
+            serverFactory.setMinThreads(MAX_THREADS);
+            serverFactory.setMaxThreads(MAX_THREADS);
+            serverFactory.setMaxQueuedRequests(CONCURRENCY * 2);
+            setServerFactory(serverFactory);
+        }
+    }
+
+    public static class LoadApplication extends Application<LoadConfig> {
+
+        private final AsyncBundle bundle = new AsyncBundle();
+
+        private final FakeDownstream downstream = new FakeDownstream();
+
+        @Override
+        public void initialize(Bootstrap<LoadConfig> bootstrap) {
+            bootstrap.addBundle(bundle);
+        }
+
+        @Override
+        public void run(LoadConfig configuration, Environment environment) {
+            environment.jersey().register(new BufferingFilter());
+            environment.jersey().register(new DownstreamUnavailableMapper());
+            environment.jersey().register(new LoadResource(downstream));
+        }
+    }
+
+    public static class LowFootprintLoadApplication extends LoadApplication {
+
+        public LowFootprintLoadApplication() {
+            bundle.withLowFootprint();
+        }
+    }
+
+    public static class CachedExceptionMappersLoadApplication extends LoadApplication {
+
+        public CachedExceptionMappersLoadApplication() {
+            bundle.withCachedExceptionMappers();
+        }
+    }
+
+    /**
+     * Buffers every request entity, as logging and auditing filters commonly do
+     */
+    public static class BufferingFilter implements ContainerRequestFilter {
+
+        @Override
+        public void filter(ContainerRequestContext requestContext) {
+            ((ContainerRequest) requestContext).bufferEntity();
+        }
+    }
+
+    /**
+     * Failure of every call to the downstream during the error storm
+     */
+    public static class DownstreamUnavailableException extends RuntimeException {
+
+        public DownstreamUnavailableException() {
+            super("Downstream unavailable");
+        }
+    }
+
+    public static class DownstreamUnavailableMapper implements ExceptionMapper<DownstreamUnavailableException> {
+
+        @Override
+        public Response toResponse(DownstreamUnavailableException exception) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Wraps downstream failures the way a {@link java.util.concurrent.CompletionException} did before the invoker unwrapped them, so that
+     * they are mapped by Dropwizard's catch-all mapper, which logs them with their stack trace
+     */
+    public static class WrappedFailure extends RuntimeException {
+
+        public WrappedFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Downstream service whose calls complete on a timer thread after a fixed latency, or are held until explicitly released
+     */
+    public static class FakeDownstream {
+
+        private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "fake-downstream");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private volatile CompletableFuture<Void> gate = new CompletableFuture<>();
+
+        public CompletionStage<String> call(long latencyMs) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            timer.schedule(() -> result.complete("ok"), latencyMs, TimeUnit.MILLISECONDS);
+            return result;
+        }
+
+        public CompletionStage<String> fail(long latencyMs) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            timer.schedule(() -> result.completeExceptionally(new DownstreamUnavailableException()), latencyMs, TimeUnit.MILLISECONDS);
+            return result;
+        }
+
+        public CompletionStage<String> hold() {
+            return gate.thenApply(ignored -> "ok");
+        }
+
+        public void release() {
+            CompletableFuture<Void> released = gate;
+            gate = new CompletableFuture<>();
+            released.complete(null);
+        }
+    }
+
+    @Path("load")
+    public static class LoadResource {
+
+        private final FakeDownstream downstream;
+
+        public LoadResource(FakeDownstream downstream) {
+            this.downstream = downstream;
+        }
+
+        @GET
+        @Path("downstream")
+        public CompletionStage<String> downstream(@QueryParam("latency") long latency) {
+            return downstream.call(latency);
+        }
+
+        @GET
+        @Path("failing")
+        public CompletionStage<String> failing(@QueryParam("latency") long latency, @QueryParam("wrapped") boolean wrapped) {
+            // A dependent stage, as real resources usually return, so the failure arrives wrapped in a CompletionException
+            CompletionStage<String> result = downstream.fail(latency).thenApply(String::trim);
+            if (wrapped) {
+                return result.handle((value, error) -> {
+                    throw new WrappedFailure(error);
+                });
+            }
+            return result;
+        }
+
+        @POST
+        @Path("hold")
+        public CompletionStage<String> hold(String entity) {
+            return downstream.hold();
+        }
+    }
+
+    /**
+     * Records the duration of every GC pause while attached
+     */
+    private static class GcPauseRecorder implements NotificationListener {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong totalMillis = new AtomicLong();
+
+        private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+
+        void attach() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+
+        void detach() throws Exception {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).removeNotificationListener(this);
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                long duration = GarbageCollectionNotificationInfo
+                    .from((CompositeData) notification.getUserData())
+                    .getGcInfo()
+                    .getDuration();
+                count.incrementAndGet();
+                totalMillis.addAndGet(duration);
+                maxMillis.accumulate(duration);
+            }
+        }
+
+        Map<String, Object> report() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("count", count.get());
+            report.put("totalMillis", totalMillis.get());
+            report.put("maxMillis", maxMillis.get());
+            return report;
+        }
+    }
+
+    public final DropwizardAppExtension<LoadConfig> dropwizard = new DropwizardAppExtension<>(LoadApplication.class, new LoadConfig());
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.setMaxConnectionsPerDestination(CONCURRENCY);
+        client.setMaxRequestsQueuedPerDestination(CONCURRENCY * 2);
+        client.setIdleTimeout(TimeUnit.MINUTES.toMillis(10));
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private static String url(int port, String path) {
+        return "http://localhost:" + port + "/load/" + path;
+    }
+
+    private CompletableFuture<Long> send(Request request) {
+        return send(request, 200);
+    }
+
+    /**
+     * Sends a request, completing with its latency in nanoseconds if it has the expected status
+     */
+    private CompletableFuture<Long> send(Request request, int expectedStatus) {
+        CompletableFuture<Long> latency = new CompletableFuture<>();
+        long start = System.nanoTime();
+        request.timeout(10, TimeUnit.MINUTES).send(result -> {
+            if (result.getFailure() != null) {
+                latency.completeExceptionally(result.getFailure());
+            } else if (result.getResponse().getStatus() != expectedStatus) {
+                latency.completeExceptionally(new IllegalStateException("Unexpected status " + result.getResponse().getStatus()));
+            } else {
+                latency.complete(System.nanoTime() - start);
+            }
+        });
+        return latency;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return CPU time used by the whole process, including the load generator
+     */
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static int jettyThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("dw-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Map<String, Object> latencies(Timer timer) {
+        Snapshot snapshot = timer.getSnapshot();
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        latencies.put("p50Millis", snapshot.getMedian() / 1_000_000d);
+        latencies.put("p99Millis", snapshot.get99thPercentile() / 1_000_000d);
+        latencies.put("p999Millis", snapshot.get999thPercentile() / 1_000_000d);
+        latencies.put("maxMillis", snapshot.getMax() / 1_000_000d);
+        return latencies;
+    }
+
+    /**
+     * Suspends {@link #CONCURRENCY} requests at once, measures what they cost while idle, and then releases them all together
+     */
+    private Map<String, Object> suspendedPhase(LoadApplication application, int port) throws Exception {
+        AsyncRequestTracker tracker = application.bundle.getRequestTracker();
+        FakeDownstream downstream = application.downstream;
+        byte[] entity = new byte[ENTITY_BYTES];
+        Arrays.fill(entity, (byte) 'x');
+        long baselineHeap = usedHeap();
+        List<CompletableFuture<Long>> responses = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            Request hold = client.newRequest(url(port, "hold")).method("POST").content(new BytesContentProvider(entity), "text/plain");
+            responses.add(send(hold));
+            // Give the acceptor a chance to keep up
+            if (i % 1000 == 999) {
+                Thread.sleep(50);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        while (tracker.size() < CONCURRENCY && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(tracker.size()).isEqualTo(CONCURRENCY);
+        int threadsWhileSuspended = jettyThreads();
+        long suspendedHeap = usedHeap();
+
+        Timer timer = new Timer(new UniformReservoir(100_000));
+        long start = System.nanoTime();
+        downstream.release();
+        for (CompletableFuture<Long> response : responses) {
+            timer.update(response.get(5, TimeUnit.MINUTES), TimeUnit.NANOSECONDS);
+        }
+        long drainNanos = System.nanoTime() - start;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("suspendedRequests", CONCURRENCY);
+        report.put("entityBytes", ENTITY_BYTES);
+        report.put("jettyThreads", threadsWhileSuspended);
+        // Includes the load generator's own per-request state, since it shares the heap
+        report.put("heapBytesPerSuspendedRequest", (suspendedHeap - baselineHeap) / CONCURRENCY);
+        report.put("drainMillis", TimeUnit.NANOSECONDS.toMillis(drainNanos));
+        report.put("drainThroughputPerSecond", CONCURRENCY * 1_000_000_000d / drainNanos);
+        return report;
+    }
+
+    /**
+     * Keeps {@link #CONCURRENCY} requests in flight against a downstream endpoint with {@link #LATENCY_MS} latency for
+     * {@link #DURATION_SECONDS}
+     *
+     * @param port
+     *     Port of the application to call
+     * @param path
+     *     Endpoint to call
+     * @param expectedStatus
+     *     Status every response should have; Any other outcome is counted as a failure
+     */
+    private Map<String, Object> sustainedPhase(int port, String path, int expectedStatus) throws Exception {
+        String target = url(port, path);
+        Timer timer = new Timer(new UniformReservoir(100_000));
+        AtomicLong failures = new AtomicLong();
+        LongAccumulator maxJettyThreads = new LongAccumulator(Math::max, 0);
+        long cpuStart = processCpuNanos();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        List<CompletableFuture<Void>> workers = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            CompletableFuture<Void> worker = new CompletableFuture<>();
+            loop(worker, deadline, target, expectedStatus, timer, failures);
+            workers.add(worker);
+            if (i % 1000 == 999) {
+                Thread.sleep(50);
+                maxJettyThreads.accumulate(jettyThreads());
+            }
+        }
+        while (System.nanoTime() < deadline) {
+            maxJettyThreads.accumulate(jettyThreads());
+            Thread.sleep(1000);
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).get(5, TimeUnit.MINUTES);
+        long cpuNanos = processCpuNanos() - cpuStart;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("expectedStatus", expectedStatus);
+        report.put("concurrency", CONCURRENCY);
+        report.put("downstreamLatencyMillis", LATENCY_MS);
+        report.put("durationSeconds", DURATION_SECONDS);
+        report.put("requests", timer.getCount());
+        report.put("failures", failures.get());
+        report.put("throughputPerSecond", timer.getCount() / (double) DURATION_SECONDS);
+        report.put("latency", latencies(timer));
+        report.put("maxJettyThreads", maxJettyThreads.get());
+        report.put("cpuMicrosPerRequest", timer.getCount() == 0 ? 0 : cpuNanos / 1000d / timer.getCount());
+        return report;
+    }
+
+    private void loop(CompletableFuture<Void> worker, long deadline, String url, int expectedStatus, Timer timer, AtomicLong failures) {
+        if (System.nanoTime() >= deadline) {
+            worker.complete(null);
+            return;
+        }
+        send(client.newRequest(url), expectedStatus).whenComplete((latency, error) -> {
+            if (error != null) {
+                failures.incrementAndGet();
+            } else {
+                timer.update(latency, TimeUnit.NANOSECONDS);
+            }
+            loop(worker, deadline, url, expectedStatus, timer, failures);
+        });
+    }
+
+    /**
+     * Repeats the suspended phase against a second application running in low-footprint mode
+     */
+    private Map<String, Object> lowFootprintPhase() throws Exception {
+        DropwizardTestSupport<LoadConfig> lowFootprint = new DropwizardTestSupport<>(LowFootprintLoadApplication.class, new LoadConfig());
+        lowFootprint.before();
+        try {
+            Map<String, Object> report = suspendedPhase(lowFootprint.getApplication(), lowFootprint.getLocalPort());
+            // Both applications' request threads share the same name prefix, so the count isn't meaningful here
+            report.remove("jettyThreads");
+            return report;
+        } finally {
+            lowFootprint.after();
+        }
+    }
+
+    /**
+     * Repeats the error storm against a second application that caches exception mapper lookups
+     */
+    private Map<String, Object> cachedExceptionMappersPhase() throws Exception {
+        DropwizardTestSupport<LoadConfig> cached =
+            new DropwizardTestSupport<>(CachedExceptionMappersLoadApplication.class, new LoadConfig());
+        cached.before();
+        try {
+            return sustainedPhase(cached.getLocalPort(), "failing?latency=" + LATENCY_MS, 503);
+        } finally {
+            cached.after();
+        }
+    }
+
+    private static double cpuSaved(Map<String, Object> without, Map<String, Object> with) {
+        return (double) without.get("cpuMicrosPerRequest") - (double) with.get("cpuMicrosPerRequest");
+    }
+
+    @Test
+    public void loadTest() throws Exception {
+        GcPauseRecorder gcPauses = new GcPauseRecorder();
+        gcPauses.attach();
+        Map<String, Object> results = new LinkedHashMap<>();
+        try {
+            results.put("maxThreads", MAX_THREADS);
+            Map<String, Object> suspended = suspendedPhase(dropwizard.getApplication(), dropwizard.getLocalPort());
+            results.put("suspended", suspended);
+            int port = dropwizard.getLocalPort();
+            Map<String, Object> sustained = sustainedPhase(port, "downstream?latency=" + LATENCY_MS, 200);
+            results.put("sustained", sustained);
+            // Every downstream call fails, with and without each part of the cheap failure path
+            Map<String, Object> wrappedStorm = sustainedPhase(port, "failing?wrapped=true&latency=" + LATENCY_MS, 500);
+            results.put("errorStormWrapped", wrappedStorm);
+            Map<String, Object> errorStorm = sustainedPhase(port, "failing?latency=" + LATENCY_MS, 503);
+            results.put("errorStorm", errorStorm);
+            Map<String, Object> cachedStorm = cachedExceptionMappersPhase();
+            results.put("errorStormCachedExceptionMappers", cachedStorm);
+            results.put("failureCpuMicrosPerRequest", cpuSaved(errorStorm, sustained));
+            results.put("cpuMicrosSavedPerFailureByUnwrapping", cpuSaved(wrappedStorm, errorStorm));
+            results.put("cpuMicrosSavedPerFailureByCachedExceptionMappers", cpuSaved(errorStorm, cachedStorm));
+            results.put("cpuMicrosSavedPerFailure", cpuSaved(wrappedStorm, cachedStorm));
+            Map<String, Object> lowFootprint = lowFootprintPhase();
+            results.put("suspendedLowFootprint", lowFootprint);
+            results.put(
+                "heapBytesSavedPerSuspendedRequest",
+                (long) suspended.get("heapBytesPerSuspendedRequest") - (long) lowFootprint.get("heapBytesPerSuspendedRequest")
+            );
+        } finally {
+            gcPauses.detach();
+        }
+        results.put("gcPauses", gcPauses.report());
+
+        File output = new File(OUTPUT);
+        output.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, results);
+        log.info("Load test results written to {}", output.getAbsolutePath());
+    }
+}
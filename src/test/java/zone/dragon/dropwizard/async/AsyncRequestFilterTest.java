@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncRequestFilter")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class AsyncRequestFilterTest {
+
+    public static class FilterApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle());
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(new TenantFilter());
+            environment.jersey().register(FilteredResource.class);
+        }
+    }
+
+    /**
+     * Looks up the tenant on another thread, rejecting requests that don't name one
+     */
+    public static class TenantFilter implements AsyncRequestFilter {
+
+        @Override
+        public CompletionStage<Void> filter(ContainerRequestContext requestContext) {
+            String tenant = requestContext.getHeaderString("X-Tenant");
+            if (tenant == null) {
+                return AsyncRequestFilter.abortWith(Response.status(401).build());
+            }
+            return CompletableFuture.runAsync(() -> requestContext.setProperty("tenant", tenant));
+        }
+    }
+
+    @Path("filtered")
+    public static class FilteredResource {
+
+        @GET
+        public CompletionStage<String> get(@Context ContainerRequestContext request) {
+            return CompletableFuture.completedFuture("tenant=" + request.getProperty("tenant"));
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        FilterApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private String url() {
+        return "http://localhost:" + dropwizard.getLocalPort() + "/filtered";
+    }
+
+    @Test
+    @DisplayName("invokes resource once filters complete")
+    void invokesAfterFilters() throws Exception {
+        ContentResponse response = client.newRequest(url()).header("X-Tenant", "acme").send();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("tenant=acme");
+    }
+
+    @Test
+    @DisplayName("aborts with the filter's response")
+    void abortsWithResponse() throws Exception {
+        ContentResponse response = client.newRequest(url()).send();
+        assertThat(response.getStatus()).isEqualTo(401);
+    }
+}
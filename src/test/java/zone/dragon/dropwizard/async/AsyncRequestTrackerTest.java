@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMultimap;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncRequestTracker")
+public class AsyncRequestTrackerTest {
+
+    private final AsyncRequestTracker tracker = new AsyncRequestTracker();
+
+    private InFlightRequest track(String endpoint, long ageMillis, StubAsyncResponse response) {
+        long startNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ageMillis);
+        InFlightRequest request = tracker.track("GET", URI.create("http://localhost/" + endpoint), endpoint, startNanos, response);
+        response.register(request);
+        return request;
+    }
+
+    @Nested
+    @DisplayName("track(...)")
+    class Track {
+
+        @Test
+        @DisplayName("removes request once the response completes")
+        void removesOnCompletion() {
+            StubAsyncResponse response = new StubAsyncResponse();
+            track("a", 0, response);
+            assertThat(tracker.size()).isEqualTo(1);
+            response.resume("done");
+            assertThat(tracker.size()).isEqualTo(0);
+        }
+
+        @Test
+        @DisplayName("reports state of the continuation")
+        void reportsState() {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            InFlightRequest request = track("a", 0, new StubAsyncResponse());
+            assertThat(request.getState()).isEqualTo(InFlightRequest.State.PENDING);
+            request.setContinuation(future);
+            assertThat(request.getState()).isEqualTo(InFlightRequest.State.PENDING);
+            future.completeExceptionally(new IllegalStateException());
+            assertThat(request.getState()).isEqualTo(InFlightRequest.State.FAILED);
+        }
+    }
+
+    @Nested
+    @DisplayName("snapshots")
+    class Snapshots {
+
+        @Test
+        @DisplayName("count requests per endpoint")
+        void countsPerEndpoint() {
+            track("a", 0, new StubAsyncResponse());
+            track("a", 0, new StubAsyncResponse());
+            track("b", 0, new StubAsyncResponse());
+            assertThat(tracker.getEndpointCounts()).containsEntry("a", 2).containsEntry("b", 1);
+        }
+
+        @Test
+        @DisplayName("bucket requests by age")
+        void bucketsByAge() {
+            track("a", 0, new StubAsyncResponse());
+            track("a", TimeUnit.SECONDS.toMillis(30), new StubAsyncResponse());
+            track("a", TimeUnit.HOURS.toMillis(2), new StubAsyncResponse());
+            assertThat(tracker.getAgeHistograms().get("a")).containsExactly(1, 0, 1, 0, 0, 1);
+        }
+    }
+
+    @Nested
+    @DisplayName("cancelOlderThan(long,TimeUnit)")
+    class CancelOlderThan {
+
+        @Test
+        @DisplayName("cancels only old requests")
+        void cancelsOldRequests() {
+            StubAsyncResponse young = new StubAsyncResponse();
+            StubAsyncResponse old = new StubAsyncResponse();
+            CompletableFuture<String> future = new CompletableFuture<>();
+            track("a", TimeUnit.MINUTES.toMillis(5), old).setContinuation(future);
+            track("a", 0, young);
+
+            assertThat(tracker.cancelOlderThan(1, TimeUnit.MINUTES)).isEqualTo(1);
+            assertThat(old.isCancelled()).isTrue();
+            assertThat(future.isCancelled()).isTrue();
+            assertThat(young.isSuspended()).isTrue();
+            assertThat(tracker.size()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("admin tasks")
+    class Tasks {
+
+        private String execute(Task task, String parameter, String value) throws Exception {
+            StringWriter output = new StringWriter();
+            task.execute(ImmutableMultimap.of(parameter, value), new PrintWriter(output));
+            return output.toString();
+        }
+
+        @Test
+        @DisplayName("count the requests left out of the listing")
+        void countsSkipped() throws Exception {
+            track("a", 0, new StubAsyncResponse());
+            track("a", 0, new StubAsyncResponse());
+            track("a", 0, new StubAsyncResponse());
+            assertThat(execute(new AsyncRequestsTask(tracker), "limit", "1")).contains("... 2 more");
+            assertThat(execute(new AsyncRequestsTask(tracker), "limit", "5")).doesNotContain("more");
+        }
+
+        @Test
+        @DisplayName("report invalid numbers")
+        void rejectsInvalidNumbers() throws Exception {
+            track("a", TimeUnit.MINUTES.toMillis(5), new StubAsyncResponse());
+            assertThat(execute(new AsyncRequestsTask(tracker), "limit", "ten")).startsWith("Invalid parameter: limit");
+            assertThat(execute(new AsyncRequestsTask(tracker), "limit", "-1")).startsWith("Invalid parameter: limit");
+            assertThat(execute(new CancelAsyncRequestsTask(tracker), "olderThan", "1m")).startsWith("Invalid parameter: olderThan");
+            assertThat(tracker.size()).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncScope")
+public class AsyncScopeTest {
+
+    private final AsyncScopeSettings settings = new AsyncScopeSettings(2);
+
+    private final AsyncScope scope = new AsyncScope(settings);
+
+    private final List<CompletableFuture<String>> tasks = new ArrayList<>();
+
+    private CompletableFuture<String> fork() {
+        return scope.fork(() -> {
+            CompletableFuture<String> task = new CompletableFuture<>();
+            tasks.add(task);
+            return task;
+        });
+    }
+
+    @Test
+    @DisplayName("queues forks beyond the parallelism limit")
+    void boundedParallelism() throws Exception {
+        CompletableFuture<String> first = fork();
+        CompletableFuture<String> second = fork();
+        CompletableFuture<String> third = fork();
+        assertThat(tasks).hasSize(2);
+        tasks.get(0).complete("a");
+        assertThat(first.get()).isEqualTo("a");
+        assertThat(tasks).hasSize(3);
+        tasks.get(1).complete("b");
+        tasks.get(2).complete("c");
+        assertThat(second.get()).isEqualTo("b");
+        assertThat(third.get()).isEqualTo("c");
+        assertThat(scope.getForks()).isEqualTo(3);
+        assertThat(scope.getPeakConcurrency()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("cancels running and queued tasks when closed")
+    void closeCancels() {
+        CompletableFuture<String> first = fork();
+        CompletableFuture<String> second = fork();
+        CompletableFuture<String> third = fork();
+        CompletableFuture<String> queued = fork();
+        tasks.get(0).complete("a");
+        scope.onComplete(null);
+        assertThat(first).isCompletedWithValue("a");
+        assertThat(second).isCancelled();
+        assertThat(third).isCancelled();
+        assertThat(queued).isCancelled();
+        assertThat(tasks.get(1)).isCancelled();
+        assertThat(tasks.get(2)).isCancelled();
+        assertThat(tasks).hasSize(3);
+        assertThat(scope.getCancelled()).isEqualTo(3);
+        assertThat(fork()).isCancelled();
+        assertThat(settings.getForks().getCount()).isEqualTo(1);
+        assertThat(settings.getCancelled().getCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("fails and cancels tasks that time out")
+    void timeout() {
+        CompletableFuture<String> task = new CompletableFuture<>();
+        CompletableFuture<String> forked = scope.fork(() -> task, 10, TimeUnit.MILLISECONDS);
+        assertThatThrownBy(forked::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(task).isCancelled();
+        assertThat(scope.getTimeouts()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("starts queued tasks that complete immediately without recursing")
+    void queuedWithoutRecursion() throws Exception {
+        AsyncScope serial = new AsyncScope(new AsyncScopeSettings(1));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        serial.fork(() -> first);
+        List<Integer> depths = new ArrayList<>();
+        CompletableFuture<String> last = null;
+        for (int i = 0; i < 10_000; i++) {
+            last = serial.fork(() -> {
+                depths.add(Thread.currentThread().getStackTrace().length);
+                return CompletableFuture.completedFuture("done");
+            });
+        }
+        first.complete("first");
+        assertThat(last.get()).isEqualTo("done");
+        assertThat(depths).hasSize(10_000);
+        assertThat(depths.get(depths.size() - 1)).isEqualTo(depths.get(0));
+    }
+
+    @Test
+    @DisplayName("starts tasks queued behind a timed out task on its executor rather than the timer thread")
+    void timeoutStartsQueuedOnExecutor() throws Exception {
+        AsyncScope serial = new AsyncScope(new AsyncScopeSettings(1));
+        serial.setExecutor(runnable -> new Thread(runnable, "resume-executor").start());
+        CompletableFuture<String> timedOut = serial.fork(() -> new CompletableFuture<String>(), 10, TimeUnit.MILLISECONDS);
+        AtomicReference<String> thread = new AtomicReference<>();
+        CompletableFuture<String> queued = serial.fork(() -> {
+            thread.set(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture("queued");
+        });
+        assertThat(queued.get(10, TimeUnit.SECONDS)).isEqualTo("queued");
+        assertThat(timedOut).isCompletedExceptionally();
+        assertThat(thread.get()).isEqualTo("resume-executor");
+    }
+
+    @Test
+    @DisplayName("cancels tasks when the client disconnects")
+    void disconnectCancels() {
+        CompletableFuture<String> first = fork();
+        scope.onDisconnect(null);
+        assertThat(first).isCancelled();
+        assertThat(tasks.get(0)).isCancelled();
+    }
+
+    @Test
+    @DisplayName("fails allOf fast, cancelling the remaining stages")
+    void allOfFailsFast() {
+        CompletableFuture<String> first = fork();
+        CompletableFuture<String> second = fork();
+        CompletableFuture<List<String>> all = scope.allOf(first, second);
+        tasks.get(0).completeExceptionally(new IllegalStateException("failed"));
+        assertThatThrownBy(all::get).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(second).isCancelled();
+        assertThat(tasks.get(1)).isCancelled();
+    }
+
+    @Test
+    @DisplayName("completes allOf with results in order")
+    void allOfResults() throws Exception {
+        CompletableFuture<List<String>> all = scope.allOf(fork(), fork());
+        tasks.get(1).complete("b");
+        tasks.get(0).complete("a");
+        assertThat(all.get()).containsExactly("a", "b");
+    }
+
+    @Test
+    @DisplayName("completes anyOf with the first success")
+    void anyOfFirstSuccess() throws Exception {
+        CompletableFuture<String> first = fork();
+        CompletableFuture<String> second = fork();
+        CompletableFuture<String> any = scope.anyOf(first, second);
+        tasks.get(0).completeExceptionally(new IllegalStateException("failed"));
+        assertThat(any).isNotDone();
+        tasks.get(1).complete("b");
+        assertThat(any.get()).isEqualTo("b");
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.EntityTag;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncValidator")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class AsyncValidatorTest {
+
+    public static class ValidatorApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle());
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(new DocumentResource(invocations));
+        }
+    }
+
+    /**
+     * Parameter that counts how many times it is resolved
+     */
+    public static class Revision {
+
+        static final AtomicInteger RESOLVED = new AtomicInteger();
+
+        private final String value;
+
+        public Revision(String value) {
+            RESOLVED.incrementAndGet();
+            this.value = value;
+        }
+    }
+
+    @Path("documents/{id}")
+    public static class DocumentResource {
+
+        private final AtomicInteger invocations;
+
+        public DocumentResource(AtomicInteger invocations) {
+            this.invocations = invocations;
+        }
+
+        @GET
+        @AsyncValidator("version")
+        public CompletionStage<String> get(@PathParam("id") String id) {
+            invocations.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> "document " + id);
+        }
+
+        CompletionStage<EntityTag> version(String id) {
+            return CompletableFuture.supplyAsync(() -> new EntityTag(id + "-v1"));
+        }
+
+        @GET
+        @Path("revisions/{revision}")
+        @AsyncValidator("revisionVersion")
+        public CompletionStage<String> getRevision(@PathParam("id") String id, @PathParam("revision") Revision revision) {
+            return CompletableFuture.completedFuture("document " + id + " revision " + revision.value);
+        }
+
+        CompletionStage<EntityTag> revisionVersion(String id, Revision revision) {
+            return CompletableFuture.completedFuture(new EntityTag(id + "-" + revision.value));
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        ValidatorApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private String url(String id) {
+        return "http://localhost:" + dropwizard.getLocalPort() + "/documents/" + id;
+    }
+
+    private int invocations() {
+        return ((ValidatorApplication) dropwizard.getApplication()).invocations.get();
+    }
+
+    @Test
+    @DisplayName("adds the validator to the full response")
+    void addsValidator() throws Exception {
+        ContentResponse response = client.newRequest(url("a")).send();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("document a");
+        assertThat(response.getHeaders().get("ETag")).isEqualTo("\"a-v1\"");
+        assertThat(invocations()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("resumes with 304 without invoking the resource method when the validator matches")
+    void notModified() throws Exception {
+        ContentResponse response = client.newRequest(url("b")).header("If-None-Match", "\"b-v1\"").send();
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeaders().get("ETag")).isEqualTo("\"b-v1\"");
+        assertThat(invocations()).isZero();
+    }
+
+    @Test
+    @DisplayName("resolves the parameters once for both the validator and the resource method")
+    void resolvesParametersOnce() throws Exception {
+        Revision.RESOLVED.set(0);
+        ContentResponse response = client.newRequest(url("d") + "/revisions/2").header("If-None-Match", "\"d-1\"").send();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("document d revision 2");
+        assertThat(Revision.RESOLVED).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("invokes the resource method when the validator doesn't match")
+    void modified() throws Exception {
+        ContentResponse response = client.newRequest(url("c")).header("If-None-Match", "\"c-v0\"").send();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(invocations()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.model.Parameter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncValueProvider")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class AsyncValueProviderTest {
+
+    private static final ExecutorService LOOKUPS = Executors.newCachedThreadPool();
+
+    public static class ProviderApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle());
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(new RemoteValueProvider());
+            environment.jersey().register(LookupResource.class);
+        }
+    }
+
+    /**
+     * Resolves {@link Remote} parameters on another thread; Every lookup of a request waits for all of that request's lookups to have
+     * started, so a request only succeeds if its lookups run in parallel
+     */
+    public static class RemoteValueProvider implements AsyncValueProvider {
+
+        @Override
+        public boolean canResolve(Parameter parameter) {
+            return parameter.getRawType() == Remote.class;
+        }
+
+        @Override
+        public CompletionStage<?> resolve(ContainerRequest request, Parameter parameter) {
+            String expected = request.getUriInfo().getQueryParameters().getFirst("lookups");
+            CountDownLatch started = (CountDownLatch) request.getProperty("started");
+            if (started == null) {
+                started = new CountDownLatch(Integer.parseInt(expected));
+                request.setProperty("started", started);
+            }
+            CountDownLatch allStarted = started;
+            return CompletableFuture.supplyAsync(() -> {
+                allStarted.countDown();
+                try {
+                    if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Lookups were not started in parallel");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (request.getUriInfo().getQueryParameters().containsKey("missing")) {
+                    throw new NotFoundException();
+                }
+                return new Remote(parameter.getSourceName());
+            }, LOOKUPS);
+        }
+    }
+
+    public static class Remote {
+
+        private final String name;
+
+        public Remote(String name) {
+            this.name = name;
+        }
+    }
+
+    @Path("lookup")
+    public static class LookupResource {
+
+        @GET
+        public CompletionStage<String> get(
+            @QueryParam("lookups") int lookups, @AsyncParam Remote user, @AsyncParam Remote account, @AsyncParam Remote flags
+        ) {
+            return CompletableFuture.completedFuture(lookups + ":" + (user != null) + (account != null) + (flags != null));
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        ProviderApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private String url(String query) {
+        return "http://localhost:" + dropwizard.getLocalPort() + "/lookup?lookups=3" + query;
+    }
+
+    @Test
+    @DisplayName("resolves all parameters in parallel before invoking")
+    void resolvesInParallel() throws Exception {
+        ContentResponse response = client.newRequest(url("")).timeout(10, TimeUnit.SECONDS).send();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("3:truetruetrue");
+    }
+
+    @Test
+    @DisplayName("maps lookup failures through exception mappers")
+    void mapsFailures() throws Exception {
+        ContentResponse response = client.newRequest(url("&missing")).timeout(10, TimeUnit.SECONDS).send();
+        assertThat(response.getStatus()).isEqualTo(404);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncWarmup")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class AsyncWarmupTest {
+
+    public static class WarmupApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        private final AsyncWarmup warmup = new AsyncWarmup(5).withRequest("/warm");
+
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle().withWarmup(warmup));
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(new WarmResource(invocations));
+        }
+    }
+
+    public static class Greeting {
+
+        public String message = "hello";
+    }
+
+    @Path("warm")
+    public static class WarmResource {
+
+        private final AtomicInteger invocations;
+
+        public WarmResource(AtomicInteger invocations) {
+            this.invocations = invocations;
+        }
+
+        @GET
+        @Produces(MediaType.APPLICATION_JSON)
+        public CompletionStage<Greeting> get() {
+            invocations.incrementAndGet();
+            return CompletableFuture.supplyAsync(Greeting::new);
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        WarmupApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    @Test
+    @DisplayName("sends the synthetic requests before startup completes")
+    void sendsRequests() {
+        WarmupApplication application = dropwizard.getApplication();
+        assertThat(application.invocations.get()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("reports how long each step took")
+    void reportsTimings() {
+        WarmupApplication application = dropwizard.getApplication();
+        assertThat(application.warmup.getTimings()).containsOnlyKeys("writers", "requests");
+    }
+}
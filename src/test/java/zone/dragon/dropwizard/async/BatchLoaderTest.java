@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("BatchLoader")
+public class BatchLoaderTest {
+
+    private final List<Set<Integer>> batches = new ArrayList<>();
+
+    private CompletableFuture<Map<Integer, String>> result;
+
+    private final BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+        synchronized (batches) {
+            batches.add(new LinkedHashSet<>(keys));
+        }
+        if (result != null) {
+            return result;
+        }
+        Map<Integer, String> values = new HashMap<>();
+        for (Integer key : keys) {
+            if (key >= 0) {
+                values.put(key, "value-" + key);
+            }
+        }
+        return CompletableFuture.completedFuture(values);
+    }, 3, 50, TimeUnit.MILLISECONDS);
+
+    @AfterEach
+    public void tearDown() {
+        loader.stop();
+    }
+
+    @Test
+    @DisplayName("loads keys on their own until started")
+    void unbatchedUntilStarted() throws Exception {
+        assertThat(loader.load(1).get()).isEqualTo("value-1");
+        assertThat(loader.load(2).get()).isEqualTo("value-2");
+        assertThat(batches).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("dispatches a full batch immediately")
+    void fullBatch() throws Exception {
+        loader.start();
+        CompletableFuture<String> first = loader.load(1);
+        CompletableFuture<String> second = loader.load(2);
+        assertThat(first).isNotDone();
+        CompletableFuture<String> third = loader.load(3);
+        assertThat(first.getNow(null)).isEqualTo("value-1");
+        assertThat(second.getNow(null)).isEqualTo("value-2");
+        assertThat(third.getNow(null)).isEqualTo("value-3");
+        assertThat(batches).containsExactly(new LinkedHashSet<>(Arrays.asList(1, 2, 3)));
+        assertThat(loader.getBatchSizes().getSnapshot().getMax()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("dispatches a partial batch once its window elapses")
+    void windowElapses() throws Exception {
+        loader.start();
+        CompletableFuture<String> first = loader.load(1);
+        CompletableFuture<String> duplicate = loader.load(1);
+        CompletableFuture<String> missing = loader.load(-1);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("value-1");
+        assertThat(duplicate.get(5, TimeUnit.SECONDS)).isEqualTo("value-1");
+        assertThat(missing.get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(batches).hasSize(1);
+        assertThat(loader.getWaitTimes().getSnapshot().getMax()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    @DisplayName("isolates callers of the same key from each other's cancellation")
+    void cancelledCaller() throws Exception {
+        loader.start();
+        CompletableFuture<String> cancelled = loader.load(1);
+        CompletableFuture<String> other = loader.load(1);
+        cancelled.cancel(false);
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo("value-1");
+        assertThat(cancelled).isCancelled();
+        assertThat(batches).containsExactly(Collections.singleton(1));
+    }
+
+    @Test
+    @DisplayName("fails every key in a failed batch")
+    void failedBatch() {
+        result = new CompletableFuture<>();
+        loader.start();
+        CompletableFuture<String> first = loader.load(1);
+        CompletableFuture<String> second = loader.load(2);
+        CompletableFuture<String> third = loader.load(3);
+        IllegalStateException error = new IllegalStateException("down");
+        result.completeExceptionally(error);
+        assertThatThrownBy(first::join).hasCause(error);
+        assertThatThrownBy(second::join).hasCause(error);
+        assertThatThrownBy(third::join).hasCause(error);
+    }
+
+    @Test
+    @DisplayName("dispatches the open batch on stop")
+    void stop() throws Exception {
+        loader.start();
+        CompletableFuture<String> pending = loader.load(1);
+        loader.stop();
+        assertThat(pending.getNow(null)).isEqualTo("value-1");
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("BatchResource")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class BatchResourceTest {
+
+    public static class BatchApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle().withBatchEndpoint(3, 2));
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(ItemResource.class);
+        }
+    }
+
+    public static class Item {
+
+        public String id;
+
+        public String tenant;
+    }
+
+    @Path("items")
+    @Produces(MediaType.APPLICATION_JSON)
+    public static class ItemResource {
+
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "item-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        @GET
+        @Path("{id}")
+        public CompletionStage<Item> get(
+            @PathParam("id") String id, @QueryParam("delay") long delay, @HeaderParam("X-Tenant") String tenant
+        ) {
+            CompletableFuture<Item> item = new CompletableFuture<>();
+            TIMER.schedule(() -> {
+                Item value = new Item();
+                value.id = id;
+                value.tenant = tenant;
+                item.complete(value);
+            }, delay, TimeUnit.MILLISECONDS);
+            return item;
+        }
+
+        @POST
+        public Item create(Item item) {
+            return item;
+        }
+
+        @GET
+        @Path("multi")
+        public Response multi(@Context HttpHeaders headers) {
+            return Response
+                .ok(headers.getRequestHeader("X-Tag"))
+                .header("X-Value", "a")
+                .header("X-Value", "b")
+                .build();
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        BatchApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private ContentResponse batch(String order, String body) throws Exception {
+        return client
+            .newRequest("http://localhost:" + dropwizard.getLocalPort() + "/batch?order=" + order)
+            .method("POST")
+            .header("X-Tenant", "acme")
+            .content(new StringContentProvider(body), MediaType.APPLICATION_JSON)
+            .send();
+    }
+
+    private List<JsonNode> lines(ContentResponse response) throws Exception {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.getContentAsString().split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(mapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    @DisplayName("streams every response in request order")
+    void requestOrder() throws Exception {
+        ContentResponse response = batch(
+            "request",
+            "[{\"path\":\"/items/a?delay=200\"},{\"path\":\"/items/b\"},{\"method\":\"POST\",\"path\":\"/items\",\"body\":{\"id\":\"c\"}}]"
+        );
+        assertThat(response.getStatus()).isEqualTo(200);
+        List<JsonNode> lines = lines(response);
+        assertThat(lines).extracting(line -> line.get("index").asInt()).containsExactly(0, 1, 2);
+        assertThat(lines).extracting(line -> line.get("status").asInt()).containsOnly(200);
+        assertThat(lines.get(0).get("body").get("id").asText()).isEqualTo("a");
+        assertThat(lines.get(0).get("body").get("tenant").asText()).isEqualTo("acme");
+        assertThat(lines.get(2).get("body").get("id").asText()).isEqualTo("c");
+    }
+
+    @Test
+    @DisplayName("streams responses in completion order when asked to")
+    void completionOrder() throws Exception {
+        ContentResponse response = batch("completion", "[{\"path\":\"/items/a?delay=500\"},{\"path\":\"/items/b\"}]");
+        assertThat(lines(response)).extracting(line -> line.get("index").asInt()).containsExactly(1, 0);
+    }
+
+    @Test
+    @DisplayName("reports the status of failed sub-requests")
+    void notFound() throws Exception {
+        List<JsonNode> lines = lines(batch("request", "[{\"path\":\"/missing\"}]"));
+        assertThat(lines.get(0).get("status").asInt()).isEqualTo(404);
+    }
+
+    @Test
+    @DisplayName("rejects batches over the limit")
+    void tooMany() throws Exception {
+        ContentResponse response = batch(
+            "request",
+            "[{\"path\":\"/items/a\"},{\"path\":\"/items/b\"},{\"path\":\"/items/c\"},{\"path\":\"/items/d\"}]"
+        );
+        assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    @DisplayName("copies every value of multi-valued headers")
+    void multiValuedHeaders() throws Exception {
+        ContentResponse response = client
+            .newRequest("http://localhost:" + dropwizard.getLocalPort() + "/batch")
+            .method("POST")
+            .header("X-Tag", "one")
+            .header("X-Tag", "two")
+            .content(new StringContentProvider("[{\"path\":\"/items/multi\"}]"), MediaType.APPLICATION_JSON)
+            .send();
+        JsonNode line = lines(response).get(0);
+        assertThat(line.get("body")).extracting(JsonNode::asText).containsExactly("one", "two");
+        assertThat(line.get("headers").get("X-Value")).extracting(JsonNode::asText).containsExactly("a", "b");
+    }
+
+    @Test
+    @DisplayName("rejects nested batches however their path is spelled")
+    void nested() throws Exception {
+        for (String path : Arrays.asList("/batch", "./batch", "items/../batch", "%62atch", "batch;x=1", "batch/")) {
+            ContentResponse response = batch("request", "[{\"method\":\"POST\",\"path\":\"" + path + "\",\"body\":[]}]");
+            assertThat(response.getStatus()).as(path).isEqualTo(400);
+        }
+    }
+
+    @Test
+    @DisplayName("rejects paths outside the application")
+    void outsideApplication() throws Exception {
+        for (String path : Arrays.asList("http://otherhost/batch", "../../batch")) {
+            ContentResponse response = batch("request", "[{\"path\":\"" + path + "\"}]");
+            assertThat(response.getStatus()).as(path).isEqualTo(400);
+        }
+    }
+
+    @Test
+    @DisplayName("recognizes every spelling of the batch path")
+    void isBatch() {
+        URI base = URI.create("http://localhost:8080/");
+        List<String> paths = Arrays.asList(
+            "batch", "/batch", "./batch", "items/../batch", "%62atch", "batch;x=1", "batch/x", "batch?order=x"
+        );
+        for (String path : paths) {
+            BatchRequest request = new BatchRequest();
+            request.setPath(path);
+            assertThat(BatchResource.isBatch(base, BatchResource.resolve(base, request))).as(path).isTrue();
+        }
+        BatchRequest items = new BatchRequest();
+        items.setPath("items/batch");
+        assertThat(BatchResource.isBatch(base, BatchResource.resolve(base, items))).isFalse();
+        BatchRequest otherHost = new BatchRequest();
+        otherHost.setPath("//otherhost/batch");
+        // Leading slashes are stripped, so this stays a path on this host
+        assertThat(BatchResource.resolve(base, otherHost)).isEqualTo(URI.create("http://localhost:8080/otherhost/batch"));
+    }
+}
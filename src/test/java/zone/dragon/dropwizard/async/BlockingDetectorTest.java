@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("BlockingDetector")
+public class BlockingDetectorTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    private final BlockingDetector detector = new BlockingDetector(5, TimeUnit.MILLISECONDS, metrics);
+
+    @Test
+    @DisplayName("ignores resource methods that return quickly")
+    void fastInvoke() {
+        detector.enter("Resource#fast");
+        detector.exit("Resource#fast");
+        assertThat(detector.getOffenders()).isEmpty();
+        assertThat(metrics.timer(MetricRegistry.name(BlockingDetector.class, "Resource#fast", "synchronous")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("reports resource methods that block before returning")
+    void slowInvoke() throws InterruptedException {
+        detector.enter("Resource#slow");
+        Thread.sleep(20);
+        detector.exit("Resource#slow");
+        assertThat(detector.getOffenders()).hasSize(1);
+        BlockingDetector.Offender offender = detector.getOffenders().get(0);
+        assertThat(offender.getEndpoint()).isEqualTo("Resource#slow");
+        assertThat(offender.getSlowInvokes()).isEqualTo(1);
+        assertThat(offender.getMaxSynchronousTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("does not report a request resumed while registering with its own completed future")
+    void resumedWhileRegistering() {
+        StubAsyncResponse response = new StubAsyncResponse();
+        InFlightRequest request = new InFlightRequest(response);
+        request.setBlockingDetector(detector);
+        detector.enter("Resource#outer");
+        try {
+            request.resumeOnCompletion(CompletableFuture.completedFuture("done"), MoreExecutors.directExecutor());
+        } finally {
+            detector.exit("Resource#outer");
+        }
+        assertThat(response.getResumedWith()).isEqualTo("done");
+        assertThat(detector.getOffenders()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("does not report long-poll waiters resumed by a publish from another resource method")
+    void publishedFromInvoke() {
+        LongPollHub<String, String> hub = new LongPollHub<>();
+        StubAsyncResponse response = new StubAsyncResponse();
+        InFlightRequest request = new InFlightRequest(null, 0, "GET", null, "Resource#watch", System.nanoTime(), response);
+        request.setBlockingDetector(detector);
+        request.resumeOnCompletion(hub.await("key"), MoreExecutors.directExecutor());
+        detector.enter("Resource#publish");
+        try {
+            hub.publish("key", "value");
+        } finally {
+            detector.exit("Resource#publish");
+        }
+        assertThat(response.getResumedWith()).isEqualTo("value");
+        assertThat(detector.getOffenders()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("does not report requests aborted by a filter before the resource method is invoked")
+    void abortedByFilter() throws Exception {
+        StubAsyncResponse response = new StubAsyncResponse();
+        InFlightRequest request = new InFlightRequest(null, 0, "GET", null, "Resource#filtered", System.nanoTime(), response);
+        request.setBlockingDetector(detector);
+        // Filters run on the Jetty thread that dispatched the request
+        detector.requestThreadFilter().doFilter(null, null, (servletRequest, servletResponse) -> AsyncRequestFilter
+            .abortWith(Response.status(403).build())
+            .whenComplete((ignored, error) -> request.onFailure(error)));
+        assertThat(response.getResumedWith()).isInstanceOf(WebApplicationException.class);
+        assertThat(detector.getOffenders()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("reports requests resumed from inside another resource method")
+    void resumedInInvoke() {
+        StubAsyncResponse response = new StubAsyncResponse();
+        InFlightRequest request = new InFlightRequest(null, 0, "GET", null, "Resource#waiting", System.nanoTime(), response);
+        request.setBlockingDetector(detector);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        request.resumeOnCompletion(future, MoreExecutors.directExecutor());
+        detector.enter("Resource#completing");
+        try {
+            future.complete("done");
+        } finally {
+            detector.exit("Resource#completing");
+        }
+        assertThat(response.getResumedWith()).isEqualTo("done");
+        assertThat(detector.getOffenders()).extracting(BlockingDetector.Offender::getEndpoint).containsExactly("Resource#waiting");
+        assertThat(detector.getOffenders().get(0).getResumesInInvoke()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.glassfish.jersey.spi.ExceptionMappers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs an application with {@link AsyncBundle#withCachedExceptionMappers()}, which is off by default
+ *
+ * @author Bryan Harclerode
+ */
+@DisplayName("AsyncBundle with cached exception mappers")
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class CachedExceptionMappersBundleTest {
+
+    public static class CachedMappersApplication extends Application<AsyncBundleTest.SimpleConfig> {
+
+        @Override
+        public void initialize(Bootstrap<AsyncBundleTest.SimpleConfig> bootstrap) {
+            bootstrap.addBundle(new AsyncBundle().withCachedExceptionMappers());
+        }
+
+        @Override
+        public void run(AsyncBundleTest.SimpleConfig configuration, Environment environment) {
+            environment.jersey().register(MappersResource.class);
+            environment.jersey().register(new AsyncBundleTest.IllegalArgumentMapper());
+        }
+    }
+
+    @Path("mappers")
+    public static class MappersResource {
+
+        @Inject
+        ExceptionMappers exceptionMappers;
+
+        @GET
+        public String getExceptionMappers() {
+            return exceptionMappers.getClass().getSimpleName();
+        }
+
+        @GET
+        @Path("failedStage")
+        public CompletionStage<Response> getFailedStage() {
+            CompletableFuture<String> downstream = new CompletableFuture<>();
+            downstream.completeExceptionally(new IllegalArgumentException("invalid"));
+            return downstream.thenApply(value -> Response.ok(value).build());
+        }
+    }
+
+    public final DropwizardAppExtension<AsyncBundleTest.SimpleConfig> dropwizard = new DropwizardAppExtension<>(
+        CachedMappersApplication.class,
+        new AsyncBundleTest.SimpleConfig()
+    );
+
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.stop();
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + dropwizard.getLocalPort() + "/mappers" + path;
+    }
+
+    @Test
+    @DisplayName("replaces Jersey's exception mappers")
+    void active() throws Exception {
+        ContentResponse response = client.GET(url(""));
+        assertThat(response.getContentAsString()).isEqualTo(CachingExceptionMappers.class.getSimpleName());
+    }
+
+    @Test
+    @DisplayName("maps failed stages by their cause on every request")
+    void mapsByCause() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            assertThat(client.GET(url("/failedStage")).getStatus()).isEqualTo(422);
+        }
+    }
+}
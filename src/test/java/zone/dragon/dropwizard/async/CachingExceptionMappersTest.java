@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.internal.ExceptionMapperFactory;
+import org.glassfish.jersey.spi.ExtendedExceptionMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("CachingExceptionMappers")
+public class CachingExceptionMappersTest {
+
+    public static class IllegalStateMapper implements ExceptionMapper<IllegalStateException> {
+
+        @Override
+        public Response toResponse(IllegalStateException exception) {
+            return Response.status(409).build();
+        }
+    }
+
+    /**
+     * Maps only {@link UnsupportedOperationException}s with the message {@code mappable}
+     */
+    public static class UnsupportedMapper implements ExtendedExceptionMapper<UnsupportedOperationException> {
+
+        private final AtomicInteger checks = new AtomicInteger();
+
+        @Override
+        public boolean isMappable(UnsupportedOperationException exception) {
+            checks.incrementAndGet();
+            return "mappable".equals(exception.getMessage());
+        }
+
+        @Override
+        public Response toResponse(UnsupportedOperationException exception) {
+            return Response.status(501).build();
+        }
+    }
+
+    public static class FirstArgumentMapper implements ExceptionMapper<IllegalArgumentException> {
+
+        @Override
+        public Response toResponse(IllegalArgumentException exception) {
+            return Response.status(400).build();
+        }
+    }
+
+    public static class SecondArgumentMapper implements ExceptionMapper<IllegalArgumentException> {
+
+        @Override
+        public Response toResponse(IllegalArgumentException exception) {
+            return Response.status(422).build();
+        }
+    }
+
+    private final IllegalStateMapper illegalStateMapper = new IllegalStateMapper();
+
+    private final UnsupportedMapper unsupportedMapper = new UnsupportedMapper();
+
+    private final ServiceLocator locator = ServiceLocatorUtilities.bind(new AbstractBinder() {
+        @Override
+        protected void configure() {
+            bind(illegalStateMapper).to(ExceptionMapper.class);
+            bind(unsupportedMapper).to(ExceptionMapper.class);
+        }
+    });
+
+    private final CachingExceptionMappers mappers = new CachingExceptionMappers(locator);
+
+    @AfterEach
+    public void tearDown() {
+        locator.shutdown();
+    }
+
+    @Test
+    @DisplayName("finds the mapper for an exception class and its subclasses")
+    void find() {
+        assertThat(mappers.find(IllegalStateException.class)).isSameAs(illegalStateMapper);
+        assertThat(mappers.find(IllegalStateException.class)).isSameAs(illegalStateMapper);
+        assertThat(mappers.findMapping(new IllegalStateException())).isSameAs(illegalStateMapper);
+        assertThat(mappers.findMapping(new java.nio.channels.NonReadableChannelException())).isSameAs(illegalStateMapper);
+    }
+
+    @Test
+    @DisplayName("finds no mapper for exceptions nothing maps")
+    void noMapper() {
+        assertThat(mappers.find(IllegalArgumentException.class)).isNull();
+        assertThat(mappers.findMapping(new IllegalArgumentException())).isNull();
+        assertThat(mappers.findMapping(new IllegalArgumentException())).isNull();
+    }
+
+    @Test
+    @DisplayName("asks extended mappers about every instance")
+    void extendedMapper() {
+        assertThat(mappers.findMapping(new UnsupportedOperationException("mappable"))).isSameAs(unsupportedMapper);
+        assertThat(mappers.findMapping(new UnsupportedOperationException("other"))).isNull();
+        assertThat(mappers.findMapping(new UnsupportedOperationException("mappable"))).isSameAs(unsupportedMapper);
+        assertThat(unsupportedMapper.checks.get()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("breaks ties between mappers at the same distance like Jersey does")
+    void equalDistance() {
+        ServiceLocator tied = ServiceLocatorUtilities.bind(new AbstractBinder() {
+            @Override
+            protected void configure() {
+                bind(new FirstArgumentMapper()).to(ExceptionMapper.class);
+                bind(new SecondArgumentMapper()).to(ExceptionMapper.class);
+            }
+        });
+        try {
+            ExceptionMapperFactory jersey = new ExceptionMapperFactory(tied);
+            CachingExceptionMappers cached = new CachingExceptionMappers(tied);
+            assertThat(cached.find(NumberFormatException.class)).isSameAs(jersey.find(NumberFormatException.class));
+            assertThat(cached.findMapping(new NumberFormatException())).isSameAs(jersey.findMapping(new NumberFormatException()));
+            assertThat(cached.findMapping(new NumberFormatException())).isSameAs(jersey.findMapping(new NumberFormatException()));
+            assertThat(cached.find(NumberFormatException.class)).isSameAs(jersey.find(NumberFormatException.class));
+        } finally {
+            tied.shutdown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("InFlightRequest")
+public class InFlightRequestTest {
+
+    private final StubAsyncResponse response = new StubAsyncResponse();
+
+    private final InFlightRequest request = new InFlightRequest(response);
+
+    @Nested
+    @DisplayName("resumeOnCompletion(CompletableFuture)")
+    class WithCompletableFuture {
+
+        @Test
+        @DisplayName("resumes immediately when already complete")
+        void alreadyComplete() {
+            request.resumeOnCompletion(CompletableFuture.completedFuture("done"), MoreExecutors.directExecutor());
+            assertThat(response.getResumedWith()).isEqualTo("done");
+        }
+
+        @Test
+        @DisplayName("resumes once completed")
+        void completedLater() {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            request.resumeOnCompletion(future, MoreExecutors.directExecutor());
+            assertThat(response.isDone()).isFalse();
+            future.complete("done");
+            assertThat(response.getResumedWith()).isEqualTo("done");
+        }
+
+        @Test
+        @DisplayName("resumes with failure")
+        void failed() {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            request.resumeOnCompletion(future, MoreExecutors.directExecutor());
+            IllegalStateException error = new IllegalStateException();
+            future.completeExceptionally(error);
+            assertThat(response.getResumedWith()).isSameAs(error);
+        }
+
+        @Test
+        @DisplayName("resumes with the cause of a failed dependent stage")
+        void failedDependentStage() {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            request.resumeOnCompletion(future.thenApply(String::trim), MoreExecutors.directExecutor());
+            IllegalStateException error = new IllegalStateException();
+            future.completeExceptionally(error);
+            assertThat(response.getResumedWith()).isSameAs(error);
+        }
+
+        @Test
+        @DisplayName("cancels the response when cancelled")
+        void cancelled() {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            request.resumeOnCompletion(future.thenApply(String::trim), MoreExecutors.directExecutor());
+            future.cancel(false);
+            assertThat(response.isCancelled()).isTrue();
+        }
+    }
+
+    @Nested
+    @DisplayName("resumeOnCompletion(ListenableFuture)")
+    class WithListenableFuture {
+
+        @Test
+        @DisplayName("resumes once completed")
+        void completed() {
+            SettableFuture<String> future = SettableFuture.create();
+            request.resumeOnCompletion(future, MoreExecutors.directExecutor());
+            future.set("done");
+            assertThat(response.getResumedWith()).isEqualTo("done");
+        }
+
+        @Test
+        @DisplayName("resumes with the cause of a failure")
+        void failed() {
+            SettableFuture<String> future = SettableFuture.create();
+            request.resumeOnCompletion(future, MoreExecutors.directExecutor());
+            IllegalStateException error = new IllegalStateException();
+            future.setException(error);
+            assertThat(response.getResumedWith()).isSameAs(error);
+        }
+
+        @Test
+        @DisplayName("cancels the response when cancelled")
+        void cancelled() {
+            SettableFuture<String> future = SettableFuture.create();
+            request.resumeOnCompletion(future, MoreExecutors.directExecutor());
+            future.cancel(false);
+            assertThat(response.isCancelled()).isTrue();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("LongPollHub")
+public class LongPollHubTest {
+
+    private final LongPollHub<String, String> hub = new LongPollHub<>(30, TimeUnit.SECONDS, "timeout", 2);
+
+    private StubAsyncResponse suspend(LongPollHub.Waiter<String, String> waiter) {
+        StubAsyncResponse response = new StubAsyncResponse();
+        new InFlightRequest(response).resumeOnCompletion(waiter, MoreExecutors.directExecutor());
+        return response;
+    }
+
+    @Test
+    @DisplayName("resumes every waiter on a key in one publish")
+    void publishWakesKey() {
+        StubAsyncResponse first = suspend(hub.await("a"));
+        StubAsyncResponse second = suspend(hub.await("a"));
+        StubAsyncResponse other = suspend(hub.await("b"));
+        assertThat(hub.getWaiting()).isEqualTo(3);
+
+        assertThat(hub.publish("a", "value")).isEqualTo(2);
+
+        assertThat(first.getResumedWith()).isEqualTo("value");
+        assertThat(second.getResumedWith()).isEqualTo("value");
+        assertThat(other.isDone()).isFalse();
+        assertThat(hub.getWaiting()).isEqualTo(1);
+        assertThat(hub.publish("a", "again")).isZero();
+    }
+
+    @Test
+    @DisplayName("resumes a waiter published before it was returned")
+    void publishedBeforeAttach() {
+        LongPollHub.Waiter<String, String> waiter = hub.await("a");
+        hub.publish("a", "early");
+        assertThat(suspend(waiter).getResumedWith()).isEqualTo("early");
+    }
+
+    @Test
+    @DisplayName("resumes with the timeout value and unlinks the waiter on timeout")
+    void timeout() {
+        LongPollHub.Waiter<String, String> timingOut = hub.await("a");
+        StubAsyncResponse response = suspend(timingOut);
+        StubAsyncResponse remaining = suspend(hub.await("a"));
+
+        response.timeout();
+
+        assertThat(response.getResumedWith()).isEqualTo("timeout");
+        assertThat(hub.getTimeouts()).isEqualTo(1);
+        assertThat(hub.getWaiting()).isEqualTo(1);
+        assertThat(hub.publish("a", "value")).isEqualTo(1);
+        assertThat(remaining.getResumedWith()).isEqualTo("value");
+    }
+
+    @Test
+    @DisplayName("unlinks waiters whose response completes elsewhere")
+    void cancelled() {
+        StubAsyncResponse first = suspend(hub.await("a"));
+        StubAsyncResponse middle = suspend(hub.await("a"));
+        StubAsyncResponse last = suspend(hub.await("a"));
+
+        middle.cancel();
+
+        assertThat(hub.getWaiting()).isEqualTo(2);
+        assertThat(hub.publish("a", "value")).isEqualTo(2);
+        assertThat(first.getResumedWith()).isEqualTo("value");
+        assertThat(last.getResumedWith()).isEqualTo("value");
+        assertThat(middle.getResumedWith()).isNull();
+    }
+
+    @Test
+    @DisplayName("unlinks waiters whose client disconnects")
+    void disconnected() {
+        LongPollHub<String, String> untimed = new LongPollHub<>();
+        StubAsyncResponse gone = suspend(untimed.await("a"));
+        StubAsyncResponse remaining = suspend(untimed.await("a"));
+
+        gone.disconnect();
+
+        assertThat(untimed.getWaiting()).isEqualTo(1);
+        assertThat(untimed.publish("a", "value")).isEqualTo(1);
+        assertThat(remaining.getResumedWith()).isEqualTo("value");
+    }
+
+    @Test
+    @DisplayName("resumes remaining waiters on stop")
+    void stop() {
+        StubAsyncResponse first = suspend(hub.await("a"));
+        StubAsyncResponse second = suspend(hub.await("b"));
+
+        hub.stop();
+
+        assertThat(first.getResumedWith()).isEqualTo("timeout");
+        assertThat(second.getResumedWith()).isEqualTo("timeout");
+        assertThat(hub.getWaiting()).isZero();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("PriorityResumeScheduler")
+public class PriorityResumeSchedulerTest {
+
+    private final PriorityResumeScheduler scheduler = new PriorityResumeScheduler(
+        1,
+        new DefaultLaneClassifier(),
+        new MetricRegistry()
+    );
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        scheduler.stop();
+    }
+
+    @Test
+    @DisplayName("runs inline when not started")
+    void runsInlineWhenNotStarted() {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        scheduler.executorFor(AsyncLane.BULK).execute(() -> ran.add(Thread.currentThread().getName()));
+        assertThat(ran).containsExactly(Thread.currentThread().getName());
+    }
+
+    @Test
+    @DisplayName("lets running resumptions finish without interrupting them on stop")
+    void stopWithoutInterrupting() throws InterruptedException {
+        scheduler.start();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        scheduler.executorFor(AsyncLane.NORMAL).execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            finished.countDown();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        scheduler.stop();
+        assertThat(finished.getCount()).isZero();
+        assertThat(interrupted).isFalse();
+    }
+
+    @Test
+    @DisplayName("runs every resumption queued while stopping")
+    void queuedWhileStopping() throws InterruptedException {
+        scheduler.start();
+        CountDownLatch ran = new CountDownLatch(10_000);
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                scheduler.executorFor(AsyncLane.values()[i % AsyncLane.values().length]).execute(ran::countDown);
+            }
+        });
+        submitter.start();
+        scheduler.stop();
+        submitter.join();
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("favors higher lanes without starving lower lanes")
+    void favorsHigherLanes() throws InterruptedException {
+        scheduler.start();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.executorFor(AsyncLane.CRITICAL).execute(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<AsyncLane> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(40);
+        for (int i = 0; i < 20; i++) {
+            scheduler.executorFor(AsyncLane.BULK).execute(() -> {
+                order.add(AsyncLane.BULK);
+                done.countDown();
+            });
+            scheduler.executorFor(AsyncLane.CRITICAL).execute(() -> {
+                order.add(AsyncLane.CRITICAL);
+                done.countDown();
+            });
+        }
+        assertThat(scheduler.getQueued(AsyncLane.BULK)).isEqualTo(20);
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<AsyncLane> firstRound = order.subList(0, 10);
+        assertThat(firstRound).filteredOn(lane -> lane == AsyncLane.BULK).hasSize(1);
+        assertThat(scheduler.getQueued(AsyncLane.BULK)).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("replaces the metrics of an earlier scheduler on the same registry")
+    void replacesMetrics() {
+        MetricRegistry metrics = new MetricRegistry();
+        new PriorityResumeScheduler(1, new DefaultLaneClassifier(), metrics);
+        new PriorityResumeScheduler(1, new DefaultLaneClassifier(), metrics);
+        assertThat(metrics.getGauges()).containsKey(MetricRegistry.name(PriorityResumeScheduler.class, "bulk", "queued"));
+        assertThat(metrics.getTimers()).containsKey(MetricRegistry.name(PriorityResumeScheduler.class, "bulk", "wait"));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Bryan Harclerode
+ */
+@DisplayName("StreamingResults")
+public class StreamingResultsTest {
+
+    private final StreamingResults results = new StreamingResults(new ObjectMapper());
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private static String write(StreamingResults.Output output) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        output.write(bytes);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("recognizes streams and iterators")
+    void streamingTypes() {
+        assertThat(StreamingResults.isStreamingType(Types.parameterized(null, Stream.class, String.class))).isTrue();
+        assertThat(StreamingResults.isStreamingType(IntStream.class)).isTrue();
+        assertThat(StreamingResults.isStreamingType(Types.parameterized(null, Iterator.class, String.class))).isTrue();
+        assertThat(StreamingResults.isStreamingType(Types.parameterized(null, List.class, String.class))).isFalse();
+        Type future = Types.parameterized(null, CompletionStage.class, Types.parameterized(null, Stream.class, String.class));
+        assertThat(StreamingResults.isStreamingType(future)).isFalse();
+    }
+
+    @Test
+    @DisplayName("writes a stream as a JSON array and closes it")
+    void stream() throws IOException {
+        Stream<String> stream = Stream.of("a", "b", "c").onClose(() -> closed.set(true));
+        assertThat(write(results.output(stream))).isEqualTo("[\"a\",\"b\",\"c\"]");
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    @DisplayName("writes an iterator as a JSON array")
+    void iterator() throws IOException {
+        assertThat(write(results.output(Arrays.asList(1, 2, 3).iterator()))).isEqualTo("[1,2,3]");
+        assertThat(write(results.output(Stream.empty()))).isEqualTo("[]");
+    }
+
+    @Test
+    @DisplayName("produces elements only as they are written")
+    void lazy() throws IOException {
+        AtomicInteger produced = new AtomicInteger();
+        StreamingResults.Output output = results.output(IntStream.range(0, 100_000).peek(ignored -> produced.incrementAndGet()).boxed());
+        assertThat(produced).hasValue(0);
+        assertThat(write(output)).startsWith("[0,1,2,").endsWith(",99999]");
+        assertThat(produced).hasValue(100_000);
+    }
+
+    @Test
+    @DisplayName("closes the stream when the client disconnects")
+    void disconnect() {
+        AtomicInteger produced = new AtomicInteger();
+        Stream<Integer> stream = IntStream
+            .range(0, 1_000_000)
+            .peek(ignored -> produced.incrementAndGet())
+            .boxed()
+            .onClose(() -> closed.set(true));
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        assertThatThrownBy(() -> results.output(stream).write(disconnected)).isInstanceOf(IOException.class);
+        assertThat(closed).isTrue();
+        assertThat(produced.get()).isLessThan(1_000_000);
+    }
+
+    @Test
+    @DisplayName("leaves the array unterminated when an element fails")
+    void failedElement() {
+        Stream<String> stream = Stream.of("a", "b").map(value -> {
+            if (value.equals("b")) {
+                throw new IllegalStateException("failed");
+            }
+            return value;
+        }).onClose(() -> closed.set(true));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertThatThrownBy(() -> results.output(stream).write(bytes)).isInstanceOf(IllegalStateException.class);
+        assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("[\"a\"");
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    @DisplayName("closes the stream when the response completes without writing it")
+    void neverWritten() {
+        results.output(Stream.of("a").onClose(() -> closed.set(true))).onComplete(null);
+        assertThat(closed).isTrue();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Bryan Harclerode
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package zone.dragon.dropwizard.async;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.container.TimeoutHandler;
+
+import lombok.Getter;
+
+/**
+ * Minimal in-memory {@link AsyncResponse} that records how it was resumed
+ *
+ * @author Bryan Harclerode
+ */
+class StubAsyncResponse implements AsyncResponse {
+
+    private final List<CompletionCallback> completionCallbacks = new ArrayList<>();
+
+    private final List<ConnectionCallback> connectionCallbacks = new ArrayList<>();
+
+    @Getter
+    private Object resumedWith;
+
+    @Getter
+    private boolean cancelled;
+
+    @Getter
+    private boolean done;
+
+    @Getter
+    private TimeoutHandler timeoutHandler;
+
+    @Override
+    public synchronized boolean resume(Object response) {
+        if (done) {
+            return false;
+        }
+        resumedWith = response;
+        complete(null);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean resume(Throwable response) {
+        if (done) {
+            return false;
+        }
+        resumedWith = response;
+        complete(response);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean cancel() {
+        if (done) {
+            return false;
+        }
+        cancelled = true;
+        complete(null);
+        return true;
+    }
+
+    @Override
+    public boolean cancel(int retryAfter) {
+        return cancel();
+    }
+
+    @Override
+    public boolean cancel(Date retryAfter) {
+        return cancel();
+    }
+
+    private void complete(Throwable error) {
+        done = true;
+        for (CompletionCallback callback : completionCallbacks) {
+            callback.onComplete(error);
+        }
+    }
+
+    @Override
+    public synchronized boolean isSuspended() {
+        return !done;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public boolean setTimeout(long time, TimeUnit unit) {
+        return !done;
+    }
+
+    @Override
+    public void setTimeoutHandler(TimeoutHandler handler) {
+        timeoutHandler = handler;
+    }
+
+    /**
+     * Fires the timeout handler, as the container would once the suspend timeout elapses
+     */
+    void timeout() {
+        timeoutHandler.handleTimeout(this);
+    }
+
+    /**
+     * Fires the connection callbacks, as the container would once writing the response to a disconnected client fails
+     */
+    void disconnect() {
+        for (ConnectionCallback callback : connectionCallbacks) {
+            callback.onDisconnect(this);
+        }
+    }
+
+    @Override
+    public Collection<Class<?>> register(Class<?> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized Collection<Class<?>> register(Object callback) {
+        List<Class<?>> registered = new ArrayList<>(2);
+        if (callback instanceof CompletionCallback) {
+            completionCallbacks.add((CompletionCallback) callback);
+            registered.add(CompletionCallback.class);
+        }
+        if (callback instanceof ConnectionCallback) {
+            connectionCallbacks.add((ConnectionCallback) callback);
+            registered.add(ConnectionCallback.class);
+        }
+        return registered;
+    }
+
+    @Override
+    public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+        register(callback);
+        for (Object other : callbacks) {
+            register(other);
+        }
+        return Collections.emptyMap();
+    }
+}